@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/** Generated configurations and messages shared by the benchmarks.
+ *  @author agent
+ */
+class BenchmarkData {
+
+    /** The upper-case alphabet. */
+    static final Alphabet UPPER = new CharacterRange('A', 'Z');
+
+    /** The configuration file for the naval rotors. */
+    static final String NAVAL_CONFIG =
+        "A-Z\n"
+        + "5 3\n"
+        + "I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "V MZ      (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + "VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "VII MZM   (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + "VIII MZM  (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)\n"
+        + "Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "          (RX) (SZ) (TV)\n"
+        + "C R       (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "          (QZ) (SX) (UY)\n";
+
+    /** A settings line for the naval configuration. */
+    static final String SETTINGS = "* B Beta III IV I AXLE (HQ) (EX) (IP)";
+
+    /** The permutation of naval rotor I. */
+    static final String ROTOR_I =
+        "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+
+    /** Return a naval machine set up by SETTINGS. */
+    static Machine navalMachine() {
+        try {
+            File config = writeTemp(NAVAL_CONFIG);
+            Machine machine = new Main(new String[] {config.getPath()})
+                .readConfig();
+            Main.setUp(machine, SETTINGS);
+            return machine;
+        } catch (IOException excp) {
+            throw new RuntimeException(excp);
+        }
+    }
+
+    /** Return a random upper-case message of LENGTH letters. */
+    static String message(int length) {
+        Random random = new Random(length);
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(msg);
+    }
+
+    /** Return a configuration with the naval alphabet and reflectors and
+     *  ROTORS random moving rotors. */
+    static String config(int rotors) {
+        Random random = new Random(rotors);
+        StringBuilder config = new StringBuilder(NAVAL_CONFIG);
+        for (int k = 0; k < rotors; k += 1) {
+            char[] wiring = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+            for (int i = wiring.length - 1; i > 0; i -= 1) {
+                int j = random.nextInt(i + 1);
+                char tmp = wiring[i];
+                wiring[i] = wiring[j];
+                wiring[j] = tmp;
+            }
+            config.append("R").append(k).append(" M")
+                .append(wiring[0]).append(" (").append(wiring).append(")\n");
+        }
+        return config.toString();
+    }
+
+    /** Return an input file of LINES message lines of WIDTH letters each,
+     *  with a settings line every 1000 lines. */
+    static File input(int lines, int width) throws IOException {
+        File file = File.createTempFile("enigma", ".in");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            for (int i = 0; i < lines; i += 1) {
+                if (i % 1000 == 0) {
+                    out.println(SETTINGS);
+                }
+                out.println(message(width));
+            }
+        }
+        return file;
+    }
+
+    /** Return a temporary file containing TEXT. */
+    static File writeTemp(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+}
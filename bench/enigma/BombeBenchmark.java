@@ -0,0 +1,89 @@
+package enigma;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the Bombe against a naive search of every rotor order
+ *  and start with Machine.convert, on a machine with the naval rotors but
+ *  only two moving slots. The naive search is given the plugboard, which
+ *  the bombe has to find.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BombeBenchmark {
+
+    /** Length of the crib. */
+    @Param({ "15", "30" })
+    public int length;
+
+    /** The settings the ciphertext was enciphered with. */
+    private static final String KEY = "* C VII III QF (TQ) (EX) (HR)";
+
+    /** Read the configuration and encipher the crib. */
+    @Setup
+    public void setUp() throws IOException {
+        String config = BenchmarkData.NAVAL_CONFIG.replace("5 3", "3 2");
+        _machine = new Main(new String[] {
+                BenchmarkData.writeTemp(config).getPath() }).readConfig();
+        _bombe = new Bombe(_machine);
+        _crib = BenchmarkData.message(length);
+        Main.setUp(_machine, KEY);
+        _cipher = _machine.convert(_crib);
+        _orders = KeySearch.rotorOrders(_machine);
+    }
+
+    /** Run the bombe. */
+    @Benchmark
+    public List<Bombe.Stop> bombe() {
+        return _bombe.run(_crib, _cipher, 0);
+    }
+
+    /** Try every rotor order and start, returning the number of keys that
+     *  decrypt the ciphertext to the crib. */
+    @Benchmark
+    public int bruteForce() {
+        int matches = 0;
+        Alphabet alphabet = _machine.alphabet();
+        char[] setting = new char[_machine.numRotors() - 1];
+        for (String[] order : _orders) {
+            _machine.insertRotors(order);
+            for (int s = 0; s < alphabet.size() * alphabet.size(); s += 1) {
+                setting[0] = alphabet.toChar(s / alphabet.size());
+                setting[1] = alphabet.toChar(s % alphabet.size());
+                _machine.setRotors(new String(setting));
+                if (_machine.convert(_cipher).equals(_crib)) {
+                    matches += 1;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /** The machine searched. */
+    private Machine _machine;
+
+    /** The bombe searching _machine's configuration. */
+    private Bombe _bombe;
+
+    /** The rotor orders of _machine's configuration. */
+    private List<String[]> _orders;
+
+    /** The known plaintext. */
+    private String _crib;
+
+    /** The ciphertext of _crib. */
+    private String _cipher;
+
+}
@@ -0,0 +1,43 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of ConfigParser on generated configurations, held in
+ *  memory so that only parsing is timed.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBenchmark {
+
+    /** Number of generated rotors added to the naval configuration. */
+    @Param({ "0", "100", "1000", "10000" })
+    public int rotors;
+
+    /** The text of the configuration. */
+    private String _config;
+
+    /** Generate the configuration. */
+    @Setup
+    public void setUp() {
+        _config = BenchmarkData.config(rotors);
+    }
+
+    /** Parse the configuration. */
+    @Benchmark
+    public Machine parse() {
+        return new ConfigParser(new Scanner(_config)).parse();
+    }
+
+}
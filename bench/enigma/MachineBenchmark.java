@@ -0,0 +1,67 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Machine.convert on single characters and on messages of
+ *  several lengths.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MachineBenchmark {
+
+    /** A message converted by convertString. Its length is a parameter
+     *  of convertString alone. */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /** Length of the message. */
+        @Param({ "100", "10000", "1000000" })
+        public int length;
+
+        /** The text of the message. */
+        private String _text;
+
+        /** Create the message. */
+        @Setup
+        public void setUp() {
+            _text = BenchmarkData.message(length);
+        }
+    }
+
+    /** The machine under test. */
+    private Machine _machine;
+
+    /** The next index to convert. */
+    private int _next;
+
+    /** Create the machine. */
+    @Setup
+    public void setUp() {
+        _machine = BenchmarkData.navalMachine();
+    }
+
+    /** Convert successive single indices. */
+    @Benchmark
+    public int convertInt() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _machine.convert(_next);
+    }
+
+    /** Convert the whole of MESSAGE. */
+    @Benchmark
+    public String convertString(Message message) {
+        return _machine.convert(message._text);
+    }
+
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** End-to-end benchmarks of Main on generated input files.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Main's mode option, or "" for the default line-by-line mode. */
+    @Param({ "", "--stream", "--mmap" })
+    public String mode;
+
+    /** Number of message lines in the input. */
+    @Param({ "1000", "100000" })
+    public int lines;
+
+    /** The configuration, input and output files. */
+    private File _config, _input, _output;
+
+    /** The Main under test. */
+    private Main _main;
+
+    /** Write the configuration and input files. */
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        _config = BenchmarkData.writeTemp(BenchmarkData.NAVAL_CONFIG);
+        _input = BenchmarkData.input(lines, 60);
+        _output = File.createTempFile("enigma", ".out");
+        _output.deleteOnExit();
+    }
+
+    /** Open the files. */
+    @Setup(Level.Invocation)
+    public void open() {
+        String[] files = { _config.getPath(), _input.getPath(),
+                           _output.getPath() };
+        if (mode.isEmpty()) {
+            _main = new Main(files);
+        } else {
+            _main = new Main(new String[] { mode, files[0], files[1],
+                                            files[2] });
+        }
+    }
+
+    /** Process the input file. */
+    @Benchmark
+    public void process() {
+        _main.process();
+    }
+
+}
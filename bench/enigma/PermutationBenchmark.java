@@ -0,0 +1,47 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation.permute and Permutation.invert.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBenchmark {
+
+    /** The permutation under test. */
+    private Permutation _perm;
+
+    /** The next index to convert. */
+    private int _next;
+
+    /** Create the permutation. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(BenchmarkData.ROTOR_I, BenchmarkData.UPPER);
+    }
+
+    /** Apply the permutation to successive indices. */
+    @Benchmark
+    public int permute() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _perm.permute(_next);
+    }
+
+    /** Apply the inverse permutation to successive indices. */
+    @Benchmark
+    public int invert() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _perm.invert(_next);
+    }
+
+}
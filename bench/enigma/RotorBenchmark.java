@@ -0,0 +1,58 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Rotor.convertForward and Rotor.convertBackward, with and
+ *  without precomputed tables.
+ *  @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBenchmark {
+
+    /** Whether the rotor's conversions are precomputed. */
+    @Param({ "false", "true" })
+    public boolean precomputed;
+
+    /** The rotor under test. */
+    private Rotor _rotor;
+
+    /** The next index to convert. */
+    private int _next;
+
+    /** Create the rotor. */
+    @Setup
+    public void setUp() {
+        _rotor = new MovingRotor("I", new Permutation(BenchmarkData.ROTOR_I,
+                BenchmarkData.UPPER), "Q");
+        _rotor.set(7);
+        if (precomputed) {
+            _rotor.precompute();
+        }
+    }
+
+    /** Convert successive indices forward. */
+    @Benchmark
+    public int convertForward() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _rotor.convertForward(_next);
+    }
+
+    /** Convert successive indices backward. */
+    @Benchmark
+    public int convertBackward() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _rotor.convertBackward(_next);
+    }
+
+}
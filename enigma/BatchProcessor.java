@@ -0,0 +1,153 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts batches of independent messages, each with its own settings
+ *  line in the format Main accepts, e.g.
+ *  "* B Beta III IV I AXLE (HQ) (EX)". Settings lines are parsed on the
+ *  calling thread, and the compiled machine for each distinct rotor order
+ *  and plugboard is cached; the messages are then converted in parallel,
+ *  each by its own session. Unlike Main, a settings line without a
+ *  plugboard means no plugboard, since the messages are independent.
+ *  Several threads may call process at once; they share the cache.
+ *  @author agent
+ */
+class BatchProcessor {
+
+    /** Default number of distinct rotor orders and plugboards cached. */
+    static final int DEFAULT_CACHE = 1024;
+
+    /** A processor for the rotors available to MACHINE, using the common
+     *  fork/join pool. */
+    BatchProcessor(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_CACHE);
+    }
+
+    /** A processor for the rotors available to MACHINE, running on POOL
+     *  and caching at most CACHESIZE compiled machines. */
+    BatchProcessor(Machine machine, ForkJoinPool pool, int cacheSize) {
+        _machine = new Machine(machine.alphabet(), machine.numRotors(),
+                machine.numPawls(), machine.availableRotors());
+        _pool = pool;
+        _specs = new LinkedHashMap<String, MachineSpec>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, MachineSpec> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /** Return the conversions of MESSAGES, in order, where message K is
+     *  converted starting from settings line SETTINGS[K]. */
+    String[] process(List<String> settings, List<String> messages) {
+        if (settings.size() != messages.size()) {
+            throw error("Every message needs exactly one settings line!");
+        }
+        MachineState[] sessions = new MachineState[settings.size()];
+        for (int k = 0; k < sessions.length; k += 1) {
+            sessions[k] = session(settings.get(k));
+        }
+        String[] results = new String[sessions.length];
+        _pool.invoke(new Part(sessions, messages, results,
+                              0, sessions.length));
+        return results;
+    }
+
+    /** Return the number of compiled machines currently cached. */
+    synchronized int cached() {
+        return _specs.size();
+    }
+
+    /** Return a new session set up according to the settings line
+     *  SETTINGS. */
+    private MachineState session(String settings) {
+        int n = _machine.numRotors();
+        String[] fields = Main.settingFields(n, settings);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            key.append(fields[i].toUpperCase()).append(' ');
+        }
+        String plugboard = fields.length == n + 2 ? fields[n + 1] : "";
+        key.append(plugboard.replaceAll("\\s+", ""));
+        return spec(key.toString(), Arrays.copyOf(fields, n), plugboard)
+            .newSession(fields[n]);
+    }
+
+    /** Return the compiled machine cached under KEY, first compiling it
+     *  with rotors ROTORS and plugboard PLUGBOARD if it is not cached.
+     *  The cache and the scratch machine are shared by all callers of
+     *  process, so this is done under my lock. */
+    private synchronized MachineSpec spec(String key, String[] rotors,
+                                          String plugboard) {
+        MachineSpec spec = _specs.get(key);
+        if (spec == null) {
+            _machine.insertRotors(rotors);
+            _machine.setPlugboard(PermutationCache.SHARED.get(plugboard,
+                    _machine.alphabet()));
+            spec = _machine.compile();
+            _specs.put(key, spec);
+        }
+        return spec;
+    }
+
+    /** A task converting some of the messages of a batch. */
+    private static class Part extends RecursiveAction {
+
+        /** Converts messages LO to HI - 1 of MESSAGES into RESULTS, each
+         *  with the corresponding session of SESSIONS. */
+        Part(MachineState[] sessions, List<String> messages,
+             String[] results, int lo, int hi) {
+            _sessions = sessions;
+            _messages = messages;
+            _results = results;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= 1) {
+                for (int k = _lo; k < _hi; k += 1) {
+                    _results[k] = _sessions[k].convert(_messages.get(k));
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Part(_sessions, _messages, _results, _lo, mid),
+                          new Part(_sessions, _messages, _results, mid, _hi));
+            }
+        }
+
+        /** The session for each message. */
+        private final MachineState[] _sessions;
+
+        /** The messages to convert. */
+        private final List<String> _messages;
+
+        /** Where the converted messages go. */
+        private final String[] _results;
+
+        /** The range of messages I convert. */
+        private final int _lo, _hi;
+    }
+
+    /** Scratch machine over the available rotors, used to validate and
+     *  compile each distinct rotor order and plugboard. Guarded by my
+     *  lock. */
+    private final Machine _machine;
+
+    /** The pool converting messages. */
+    private final ForkJoinPool _pool;
+
+    /** Compiled machines by rotor order and plugboard, least recently
+     *  used first. Guarded by my lock. */
+    private final LinkedHashMap<String, MachineSpec> _specs;
+
+}
@@ -0,0 +1,588 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the rotor order and start of a ciphertext from a crib,
+ *  a stretch of known plaintext, in the manner of the Turing bombe. The
+ *  crib and the ciphertext under it form a menu: each position pairs a
+ *  plaintext and a ciphertext letter that the rotors and reflector, with
+ *  the plugboard applied on both sides, map to each other. For each
+ *  candidate start, the bombe supposes that the most connected menu
+ *  letter is plugged to some letter and follows what that implies about
+ *  the partners of the other menu letters through the rotors at each
+ *  position. A supposition that plugs some letter to two partners is
+ *  refuted, along with every other supposition it implied. A start at
+ *  which some supposition survives is a stop, reported with the plugboard
+ *  pairs the supposition implies. As in the real bombe, a supposition
+ *  is first tested against a shortest loop of the menu through the
+ *  supposed letter: following its partner around the loop must bring it
+ *  back to itself, which rules out most suppositions at a cost of one
+ *  table read per loop edge.
+ *
+ *  The partners supposed for each letter are kept as a bit mask, so the
+ *  alphabet may have at most 64 characters. Each rotor order is searched
+ *  by its own task, in parallel. When it fits in TABLE_LIMIT bytes, the
+ *  task first tabulates the rotors' substitution at every start, and the
+ *  start that follows it, so that following a menu edge is a single
+ *  table read; otherwise each substitution is computed when first
+ *  needed.
+ *  @author agent
+ */
+class Bombe {
+
+    /** Largest alphabet the bombe handles. */
+    static final int MAX_SIZE = Long.SIZE;
+
+    /** Largest size in bytes of the substitution table of one rotor
+     *  order. */
+    static final int TABLE_LIMIT = 1 << 24;
+
+    /** A bombe trying the rotor orders and starts allowed by MACHINE's
+     *  configuration, on the common fork/join pool. */
+    Bombe(Machine machine) {
+        this(machine, ForkJoinPool.commonPool());
+    }
+
+    /** A bombe as above that runs on POOL. */
+    Bombe(Machine machine, ForkJoinPool pool) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        if (_size > MAX_SIZE) {
+            throw error("bombe needs an alphabet of at most %d characters",
+                        MAX_SIZE);
+        }
+        _pool = pool;
+        Machine scratch = new Machine(machine.alphabet(),
+                machine.numRotors(), machine.numPawls(),
+                machine.availableRotors());
+        _orders = KeySearch.rotorOrders(machine);
+        _specs = new MachineSpec[_orders.size()];
+        for (int k = 0; k < _specs.length; k += 1) {
+            scratch.insertRotors(_orders.get(k));
+            _specs[k] = scratch.compile();
+        }
+        long starts = 1;
+        for (int k = 1; k < machine.numRotors(); k += 1) {
+            if (starts > Integer.MAX_VALUE / _size) {
+                throw error("too many rotor starts for the bombe");
+            }
+            starts *= _size;
+        }
+        _starts = (int) starts;
+    }
+
+    /** Return the number of candidate rotor orders and starts. */
+    long candidates() {
+        return (long) _specs.length * _starts;
+    }
+
+    /** Return the stops for CRIB, the plaintext of CIPHERTEXT from its
+     *  OFFSET-th character on, in order of rotor order and then start.
+     *  Whitespace is dropped and letters are upper-cased as for
+     *  Machine.convert. */
+    List<Stop> run(String crib, String ciphertext, int offset) {
+        int[] plain = indices(crib);
+        int[] cipher = indices(ciphertext);
+        if (plain.length == 0 || offset < 0
+            || offset + plain.length > cipher.length) {
+            throw error("crib does not fit the ciphertext");
+        }
+        Menu menu = new Menu(plain, cipher, offset);
+        return _pool.invoke(new Part(menu, 0, _specs.length));
+    }
+
+    /** A start at which the bombe stopped. */
+    static final class Stop {
+
+        /** A stop with rotors ROTORS at start SETTING, whose surviving
+         *  supposition implies the plugboard pairs PAIRS. */
+        Stop(String[] rotors, String setting, String pairs) {
+            _rotors = rotors;
+            _setting = setting;
+            _pairs = pairs;
+        }
+
+        /** Return the names of the rotors in each slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the rotor setting, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied by the menu, as cycles for
+         *  Machine.setPlugboard. Letters plugged to themselves are
+         *  omitted, and letters not reached by the menu are unknown. */
+        String pairs() {
+            return _pairs;
+        }
+
+        /** Return a settings line for this stop, as Main accepts. */
+        String settingsLine() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _pairs.isEmpty() ? line : line + " " + _pairs;
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine();
+        }
+
+        /** The names of the rotors in each slot. */
+        private final String[] _rotors;
+
+        /** The rotor setting. */
+        private final String _setting;
+
+        /** The implied plugboard pairs. */
+        private final String _pairs;
+    }
+
+    /** A menu: the letter pairs of a crib, indexed by letter. */
+    private final class Menu {
+
+        /** The menu of the crib PLAIN under CIPHER from OFFSET on. */
+        Menu(int[] plain, int[] cipher, int offset) {
+            _offset = offset;
+            _length = plain.length;
+            int[] degree = new int[_size];
+            for (int i = 0; i < _length; i += 1) {
+                degree[plain[i]] += 1;
+                degree[cipher[offset + i]] += 1;
+            }
+            _first = new int[_size + 1];
+            for (int c = 0; c < _size; c += 1) {
+                _first[c + 1] = _first[c] + degree[c];
+            }
+            _other = new int[_first[_size]];
+            _position = new int[_first[_size]];
+            int[] next = _first.clone();
+            for (int i = 0; i < _length; i += 1) {
+                int p = plain[i], c = cipher[offset + i];
+                _other[next[p]] = c;
+                _position[next[p]] = i;
+                next[p] += 1;
+                _other[next[c]] = p;
+                _position[next[c]] = i;
+                next[c] += 1;
+            }
+            int test = 0;
+            for (int c = 1; c < _size; c += 1) {
+                if (degree[c] > degree[test]) {
+                    test = c;
+                }
+            }
+            _test = test;
+            _loop = shortestLoop();
+        }
+
+        /** Return the crib positions of a shortest cycle of the menu from
+         *  _test back to itself, in order, or null if there is none. */
+        private int[] shortestLoop() {
+            int[] best = null;
+            int[] via = new int[_size];
+            int[] from = new int[_size];
+            int[] queue = new int[_size];
+            for (int e0 = _first[_test]; e0 < _first[_test + 1]; e0 += 1) {
+                Arrays.fill(via, -1);
+                int start = _other[e0];
+                via[start] = _position[e0];
+                from[start] = _test;
+                queue[0] = start;
+                int head = 0, tail = 1;
+                while (head < tail && via[_test] < 0) {
+                    int b = queue[head];
+                    head += 1;
+                    for (int e = _first[b]; e < _first[b + 1]; e += 1) {
+                        int c = _other[e];
+                        if (via[c] < 0 && _position[e] != _position[e0]) {
+                            via[c] = _position[e];
+                            from[c] = b;
+                            queue[tail] = c;
+                            tail += 1;
+                        }
+                    }
+                }
+                if (via[_test] < 0) {
+                    continue;
+                }
+                int length = 0;
+                for (int c = _test; c != start; c = from[c]) {
+                    length += 1;
+                }
+                if (best == null || length + 1 < best.length) {
+                    best = new int[length + 1];
+                    int c = _test;
+                    for (int k = length; k >= 0; k -= 1) {
+                        best[k] = via[c];
+                        c = from[c];
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** The position in the ciphertext of the start of the crib. */
+        private final int _offset;
+
+        /** The length of the crib. */
+        private final int _length;
+
+        /** The edges of letter C are _first[C] to _first[C + 1] - 1. */
+        private final int[] _first;
+
+        /** The letter at the other end of each edge. */
+        private final int[] _other;
+
+        /** The crib position of each edge. */
+        private final int[] _position;
+
+        /** The letter whose partner is supposed. */
+        private final int _test;
+
+        /** The crib positions of a shortest cycle from _test back to
+         *  itself, or null if _test is on no cycle. */
+        private final int[] _loop;
+    }
+
+    /** A task trying a range of rotor orders, which returns their
+     *  stops. */
+    private class Part extends RecursiveTask<List<Stop>> {
+
+        /** Tries rotor orders LO to HI - 1 against MENU. */
+        Part(Menu menu, int lo, int hi) {
+            _menu = menu;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                Part left = new Part(_menu, _lo, mid);
+                left.fork();
+                List<Stop> right = new Part(_menu, mid, _hi).compute();
+                List<Stop> stops = left.join();
+                stops.addAll(right);
+                return stops;
+            }
+            List<Stop> stops = new ArrayList<>();
+            if (_hi == _lo) {
+                return stops;
+            }
+            _spec = _specs[_lo];
+            int n = _spec.numRotors();
+            _live = new long[_size];
+            _queue = new int[2 * _size * _size];
+            if ((long) _starts * _size <= TABLE_LIMIT) {
+                tabulate();
+                _states = new int[_menu._length];
+            } else {
+                _settings = new int[_menu._length][n];
+                _scrambled = new int[_menu._length * _size];
+                _stamps = new int[_menu._length * _size];
+            }
+            int[] start = new int[n];
+            for (int s = 0; s < _starts; s += 1) {
+                decode(s, start);
+                tryStart(s, start, stops);
+            }
+            return stops;
+        }
+
+        /** Fill _table with the substitution of the rotors and reflector
+         *  at each start, and _next with the start following each. The
+         *  substitutions are built outwards from the reflector: the one for
+         *  settings of slots 1 to K is that for slots 1 to K - 1 with the
+         *  rotor of slot K, at each of its settings, applied on either
+         *  side. */
+        private void tabulate() {
+            int[] reflector = _spec.forward(0);
+            byte[] table = new byte[_size];
+            for (int c = 0; c < _size; c += 1) {
+                table[c] = (byte) reflector[c];
+            }
+            int rows = 1;
+            int[] in = new int[_size], out = new int[_size];
+            for (int k = 1; k < _spec.numRotors(); k += 1) {
+                int[] forward = _spec.forward(k), backward = _spec.backward(k);
+                byte[] wider = new byte[rows * _size * _size];
+                for (int s = 0; s < _size; s += 1) {
+                    for (int c = 0; c < _size; c += 1) {
+                        in[c] = shift(forward, s, c);
+                        out[c] = shift(backward, s, c);
+                    }
+                    for (int r = 0; r < rows; r += 1) {
+                        int from = r * _size, to = (r * _size + s) * _size;
+                        for (int c = 0; c < _size; c += 1) {
+                            wider[to + c] = (byte) out[table[from + in[c]]];
+                        }
+                    }
+                }
+                table = wider;
+                rows *= _size;
+            }
+            _table = table;
+            _next = new int[_starts];
+            int[] settings = new int[_spec.numRotors()];
+            for (int s = 0; s < _starts; s += 1) {
+                decode(s, settings);
+                _spec.stepper().step(settings);
+                _next[s] = encode(settings);
+            }
+        }
+
+        /** Add the stops at START, whose rotor settings are SETTINGS, if
+         *  any, to STOPS. */
+        private void tryStart(int start, int[] settings, List<Stop> stops) {
+            if (_table != null) {
+                int state = start;
+                if (_menu._offset > 0) {
+                    int[] at = settings.clone();
+                    _spec.stepper().seek(at, _menu._offset);
+                    state = encode(at);
+                }
+                for (int i = 0; i < _menu._length; i += 1) {
+                    state = _next[state];
+                    _states[i] = state;
+                }
+            } else {
+                int[] at = settings.clone();
+                _spec.stepper().seek(at, _menu._offset);
+                for (int i = 0; i < _menu._length; i += 1) {
+                    _spec.stepper().step(at);
+                    System.arraycopy(at, 0, _settings[i], 0, at.length);
+                }
+                _stamp += 1;
+            }
+            int test = _menu._test;
+            long refuted = 0;
+            for (int x = 0; x < _size; x += 1) {
+                if ((refuted & (1L << x)) != 0 || !closes(x)) {
+                    continue;
+                }
+                if (suppose(test, x)) {
+                    stops.add(new Stop(_orders.get(_lo),
+                                       settingString(settings), pairs()));
+                } else {
+                    refuted |= _live[test];
+                }
+            }
+        }
+
+        /** Return false if supposing that the menu's test letter is
+         *  plugged to X is refuted by its loop alone: following X around
+         *  the loop must bring it back to X. This is much cheaper than
+         *  suppose, and leaves few suppositions for it to follow. */
+        private boolean closes(int x) {
+            int[] loop = _menu._loop;
+            if (loop == null) {
+                return true;
+            }
+            int y = x;
+            for (int i = 0; i < loop.length; i += 1) {
+                y = scramble(loop[i], y);
+            }
+            return y == x;
+        }
+
+        /** Follow the consequences of supposing that A is plugged to X,
+         *  leaving them in _live. Return false if they plug some letter
+         *  to two partners. */
+        private boolean suppose(int a, int x) {
+            for (int i = 0; i < _tail; i += 2) {
+                _live[_queue[i]] = 0;
+            }
+            int head = 0;
+            _tail = 0;
+            _live[a] = 1L << x;
+            _live[x] |= 1L << a;
+            _queue[0] = a;
+            _queue[1] = x;
+            _queue[2] = x;
+            _queue[3] = a;
+            _tail = a == x ? 2 : 4;
+            while (head < _tail) {
+                int b = _queue[head], y = _queue[head + 1];
+                head += 2;
+                for (int e = _menu._first[b]; e < _menu._first[b + 1];
+                     e += 1) {
+                    int c = _menu._other[e];
+                    int z = scramble(_menu._position[e], y);
+                    for (int side = 0; side < 2; side += 1) {
+                        long bit = 1L << z;
+                        if ((_live[c] & bit) == 0) {
+                            _live[c] |= bit;
+                            _queue[_tail] = c;
+                            _queue[_tail + 1] = z;
+                            _tail += 2;
+                            if (_live[c] != bit) {
+                                return false;
+                            }
+                        }
+                        int tmp = c;
+                        c = z;
+                        z = tmp;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Return the image of C under the rotors and reflector at crib
+         *  position I, from _table or else computing it at most once per
+         *  start. */
+        private int scramble(int i, int c) {
+            if (_table != null) {
+                return _table[_states[i] * _size + c];
+            }
+            int k = i * _size + c;
+            if (_stamps[k] != _stamp) {
+                _stamps[k] = _stamp;
+                _scrambled[k] = _spec.scramble(_settings[i], c);
+            }
+            return _scrambled[k];
+        }
+
+        /** Return the plugboard pairs in _live, as cycles. */
+        private String pairs() {
+            StringBuilder cycles = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                if (_live[c] != 0) {
+                    int d = Long.numberOfTrailingZeros(_live[c]);
+                    if (d > c) {
+                        if (cycles.length() > 0) {
+                            cycles.append(' ');
+                        }
+                        cycles.append('(').append(_alphabet.toChar(c))
+                            .append(_alphabet.toChar(d)).append(')');
+                    }
+                }
+            }
+            return cycles.toString();
+        }
+
+        /** The menu being tried. */
+        private final Menu _menu;
+
+        /** The range of rotor orders I try. */
+        private final int _lo, _hi;
+
+        /** The machine of the rotor order being tried. */
+        private MachineSpec _spec;
+
+        /** The image of each letter under the rotors and reflector at
+         *  each start, as rows of _size entries, or null if too large. */
+        private byte[] _table;
+
+        /** The start following each start, when _table is used. */
+        private int[] _next;
+
+        /** The start at each crib position, when _table is used. */
+        private int[] _states;
+
+        /** The rotor settings at each crib position, when _table is not
+         *  used. */
+        private int[][] _settings;
+
+        /** Images under the rotors at each crib position, when _table is
+         *  not used, valid where _stamps equals _stamp. */
+        private int[] _scrambled, _stamps;
+
+        /** The number of the start being tried. */
+        private int _stamp;
+
+        /** The partners supposed for each letter, as bit masks. */
+        private long[] _live;
+
+        /** The (letter, partner) pairs set in _live, in the order their
+         *  consequences are followed. */
+        private int[] _queue;
+
+        /** The end of the valid entries of _queue. */
+        private int _tail;
+    }
+
+    /** Return the alphabet indices of the non-whitespace characters of
+     *  TEXT, upper-cased. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                ch = Character.toUpperCase(ch);
+                if (!_alphabet.contains(ch)) {
+                    throw error("%c is not in the alphabet", ch);
+                }
+                result[len] = _alphabet.toInt(ch);
+                len += 1;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    /** Set SETTINGS, the settings of slots 1 and up, to those of start
+     *  number START, slot 1 being the most significant digit. */
+    private void decode(int start, int[] settings) {
+        for (int k = settings.length - 1; k > 0; k -= 1) {
+            settings[k] = start % _size;
+            start /= _size;
+        }
+    }
+
+    /** Return the number of the start whose settings of slots 1 and up
+     *  are SETTINGS. */
+    private int encode(int[] settings) {
+        int start = 0;
+        for (int k = 1; k < settings.length; k += 1) {
+            start = start * _size + settings[k];
+        }
+        return start;
+    }
+
+    /** Return the image of C under the rotor wiring WIRES (as from
+     *  MachineSpec.forward) at setting S. */
+    private int shift(int[] wires, int s, int c) {
+        int y = wires[(c + s) % _size] - s;
+        return y < 0 ? y + _size : y;
+    }
+
+    /** Return SETTING, the settings of slots 1 and up, as a string for
+     *  Machine.setRotors. */
+    private String settingString(int[] setting) {
+        char[] chars = new char[setting.length - 1];
+        for (int k = 1; k < setting.length; k += 1) {
+            chars[k - 1] = _alphabet.toChar(setting[k]);
+        }
+        return new String(chars);
+    }
+
+    /** The alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The pool running my tasks. */
+    private final ForkJoinPool _pool;
+
+    /** The rotor names of each rotor order. */
+    private final List<String[]> _orders;
+
+    /** The compiled machine for each rotor order. */
+    private final MachineSpec[] _specs;
+
+    /** The number of starts of each rotor order. */
+    private final int _starts;
+
+}
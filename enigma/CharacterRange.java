@@ -30,7 +30,7 @@ class CharacterRange extends Alphabet {
 
     @Override
     char toChar(int index) {
-        if (!contains((char) (_first + index))) {
+        if (index < 0 || index > _last - _first) {
             throw error("character index out of range");
         }
         return (char) (_first + index);
@@ -0,0 +1,40 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A Scorer giving the index of coincidence of a text: the probability
+ *  that two of its characters chosen at random are equal. It is higher
+ *  for natural language than for random text, and does not depend on
+ *  which language or on the plugboard, so it suits searches for rotor
+ *  orders and settings before the plugboard is known.
+ *  @author agent
+ */
+class CoincidenceScorer implements Scorer {
+
+    /** A scorer of texts over an alphabet of SIZE characters. */
+    CoincidenceScorer(int size) {
+        _counts = ThreadLocal.withInitial(() -> new int[size]);
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        if (len < 2) {
+            return 0;
+        }
+        int[] counts = _counts.get();
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int count : counts) {
+            pairs += (long) count * (count - 1);
+        }
+        return (double) pairs / ((long) len * (len - 1));
+    }
+
+    /** Each thread's count of each character, reused by score so that
+     *  scoring allocates nothing. */
+    private final ThreadLocal<int[]> _counts;
+
+}
@@ -0,0 +1,242 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A binary form of a parsed configuration, which loads without parsing
+ *  any cycle notation. A compiled file is a header of four big-endian
+ *  ints, MAGIC, VERSION, the length of the body and the CRC32 of the
+ *  body, followed by the body: the path, size and modification time of
+ *  the text configuration it was compiled from, the alphabet, the numbers
+ *  of rotor slots and pawls, and each available rotor's type, name,
+ *  notches and wiring as a table of alphabet indices. A file with a
+ *  different version or a bad checksum is rejected rather than misread,
+ *  and so is a file whose text configuration has changed size or
+ *  modification time since it was compiled, which is checked without
+ *  reading that configuration. When it no longer exists, the compiled
+ *  file is used as is.
+ *  @author agent
+ */
+class CompiledConfig {
+
+    /** The first four bytes of every compiled file ("Enig"). */
+    static final int MAGIC = 0x456E6967;
+
+    /** The version of the format written by write. */
+    static final int VERSION = 3;
+
+    /** Return true iff the file named NAME starts with MAGIC. */
+    static boolean isCompiled(String name) {
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                               StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && in.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Write the configuration of MACHINE (its alphabet, numbers of slots
+     *  and pawls, and available rotors), which was read from the text
+     *  configuration file named SOURCE, to the file named NAME. */
+    static void write(Machine machine, String source, String name) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bytes);
+            writeString(body, Paths.get(source).toAbsolutePath().toString());
+            long[] stamp = stamp(source);
+            if (stamp == null) {
+                throw error("could not open %s", source);
+            }
+            body.writeLong(stamp[0]);
+            body.writeLong(stamp[1]);
+            Alphabet alphabet = machine.alphabet();
+            if (alphabet instanceof CharacterRange) {
+                body.writeByte(RANGE);
+                body.writeChar(alphabet.toChar(0));
+                body.writeChar(alphabet.toChar(alphabet.size() - 1));
+            } else {
+                char[] seq = new char[alphabet.size()];
+                for (int i = 0; i < seq.length; i += 1) {
+                    seq[i] = alphabet.toChar(i);
+                }
+                body.writeByte(SEQUENCE);
+                writeString(body, new String(seq));
+            }
+            body.writeInt(machine.numRotors());
+            body.writeInt(machine.numPawls());
+            body.writeInt(machine.availableRotors().size());
+            for (Rotor rotor : machine.availableRotors()) {
+                if (rotor.reflecting()) {
+                    body.writeByte(REFLECTOR);
+                } else if (rotor.rotates()) {
+                    body.writeByte(MOVING);
+                } else {
+                    body.writeByte(FIXED);
+                }
+                writeString(body, rotor.name());
+                if (rotor.rotates()) {
+                    writeString(body, ((MovingRotor) rotor).notches());
+                }
+                for (int i = 0; i < alphabet.size(); i += 1) {
+                    body.writeChar(rotor.permutation().permute(i));
+                }
+            }
+            body.flush();
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            try (DataOutputStream out = new DataOutputStream(
+                     new FileOutputStream(name))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(bytes.size());
+                out.writeInt((int) crc.getValue());
+                bytes.writeTo(out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return a machine configured from the compiled file named NAME,
+     *  with no rotors inserted. */
+    static Machine read(String name) {
+        ByteBuffer buf;
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                               StandardOpenOption.READ)) {
+            if (in.size() < HEADER || in.size() > Integer.MAX_VALUE) {
+                throw error("%s is corrupt", name);
+            }
+            buf = ByteBuffer.allocate((int) in.size());
+            while (buf.hasRemaining() && in.read(buf) >= 0) {
+                continue;
+            }
+            buf.flip();
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        if (buf.getInt() != MAGIC) {
+            throw error("%s is not a compiled configuration", name);
+        }
+        if (buf.getInt() != VERSION) {
+            throw error("%s was compiled by an incompatible version", name);
+        }
+        int length = buf.getInt();
+        int sum = buf.getInt();
+        if (length != buf.remaining()) {
+            throw error("%s is corrupt", name);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), buf.position(), length);
+        if ((int) crc.getValue() != sum) {
+            throw error("%s is corrupt", name);
+        }
+        try {
+            String source = readString(buf);
+            long size = buf.getLong();
+            long modified = buf.getLong();
+            long[] stamp = stamp(source);
+            if (stamp != null && (stamp[0] != size || stamp[1] != modified)) {
+                throw error("%s is out of date: %s has changed since it was "
+                            + "compiled", name, source);
+            }
+            return readBody(buf, name);
+        } catch (BufferUnderflowException excp) {
+            throw error("%s is corrupt", name);
+        }
+    }
+
+    /** Return the size and modification time in milliseconds of the file
+     *  named NAME, or null if it does not exist or cannot be examined. */
+    private static long[] stamp(String name) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(Paths.get(name),
+                                     BasicFileAttributes.class);
+            return new long[] { attrs.size(),
+                                attrs.lastModifiedTime().toMillis() };
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the machine described by the rest of the body of the
+     *  compiled file NAME, which BUF holds from its current position. */
+    private static Machine readBody(ByteBuffer buf, String name) {
+        Alphabet alphabet;
+        byte kind = buf.get();
+        if (kind == RANGE) {
+            alphabet = new CharacterRange(buf.getChar(), buf.getChar());
+        } else if (kind == SEQUENCE) {
+            alphabet = new SequenceAlphabet(readString(buf));
+        } else {
+            throw error("%s is corrupt", name);
+        }
+        int numRotors = buf.getInt();
+        int pawls = buf.getInt();
+        int count = buf.getInt();
+        ArrayList<Rotor> rotors = new ArrayList<>(count);
+        int[] table = new int[alphabet.size()];
+        for (int k = 0; k < count; k += 1) {
+            byte type = buf.get();
+            String rotor = readString(buf);
+            String notches = type == MOVING ? readString(buf) : null;
+            for (int i = 0; i < table.length; i += 1) {
+                table[i] = buf.getChar();
+            }
+            Permutation perm = new Permutation(table, alphabet);
+            if (type == MOVING) {
+                rotors.add(new MovingRotor(rotor, perm, notches));
+            } else if (type == FIXED) {
+                rotors.add(new FixedRotor(rotor, perm));
+            } else if (type == REFLECTOR) {
+                rotors.add(new Reflector(rotor, perm));
+            } else {
+                throw error("%s is corrupt", name);
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Write the length and characters of S to OUT. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Return a string written by writeString, read from BUF. */
+    private static String readString(ByteBuffer buf) {
+        char[] chars = new char[buf.getInt()];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** Size of the header, in bytes. */
+    private static final int HEADER = 16;
+
+    /** Alphabet kinds. */
+    private static final byte RANGE = 0, SEQUENCE = 1;
+
+    /** Rotor types. */
+    private static final byte MOVING = 0, FIXED = 1, REFLECTOR = 2;
+
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A parser of configuration files. After the alphabet and the line
+ *  giving the numbers of rotor slots and pawls, the rest of the file is
+ *  read once into a buffer, with lines joined by spaces, and rotor
+ *  descriptions are scanned from it in a single pass. A description is a
+ *  name and a type, each a run of ASCII letters and digits, followed by
+ *  one or more cycles, each a parenthesized run of ASCII letters and
+ *  digits; only spaces may separate these. Text that is not part of a
+ *  description is skipped.
+ *  @author agent
+ */
+class ConfigParser {
+
+    /** A parser reading the configuration CONFIG. */
+    ConfigParser(Scanner config) {
+        _config = config;
+    }
+
+    /** Return an Enigma machine configured from the contents of my
+     *  configuration. */
+    Machine parse() {
+        try {
+            String alpha = _config.nextLine().replaceAll("\\s+", "");
+            if (alpha.contains("-")) {
+                if (alpha.charAt(2) < alpha.charAt(0)) {
+                    throw error("C2 must be greater than or equal to C1!");
+                } else if (alpha.length() > 3) {
+                    throw error("Configuration file not in the right format!");
+                }
+                _alphabet = new CharacterRange(
+                        alpha.charAt(0), alpha.charAt(2));
+            } else {
+                _alphabet = new SequenceAlphabet(alpha);
+            }
+            ArrayList<String> setting =  new ArrayList<>(
+                    Arrays.asList(_config.nextLine().split("\\s+")));
+            setting.remove("");
+            if (setting.size() != 2) {
+                throw error("Configuration file not in the right format!");
+            }
+            readRotorText();
+            if (_opens != _closes) {
+                throw error("Configuration file not in the right format!");
+            }
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            int p = 0;
+            while (p < _len) {
+                if (!isWordChar(_text[p])) {
+                    p += 1;
+                    continue;
+                }
+                int end = scanRotor(p, rotors);
+                p = end > 0 ? end : wordEnd(p);
+            }
+            return new Machine(_alphabet, Integer.valueOf(setting.get(0)),
+                    Integer.valueOf(setting.get(1)), rotors);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Read the remaining lines of my configuration into _text, each
+     *  followed by a space, counting the parentheses in them. */
+    private void readRotorText() {
+        StringBuilder text = new StringBuilder();
+        while (_config.hasNextLine()) {
+            String line = _config.nextLine();
+            for (int i = 0; i < line.length(); i += 1) {
+                char ch = line.charAt(i);
+                if (ch == '(') {
+                    _opens += 1;
+                } else if (ch == ')') {
+                    _closes += 1;
+                }
+            }
+            text.append(line).append(' ');
+        }
+        _len = text.length();
+        _text = new char[_len];
+        text.getChars(0, _len, _text, 0);
+    }
+
+    /** If a rotor description starts at P in _text, add the rotor it
+     *  describes to ROTORS and return the index just past it. Otherwise
+     *  return 0. */
+    private int scanRotor(int p, ArrayList<Rotor> rotors) {
+        int nameEnd = wordEnd(p);
+        int typeStart = spacesEnd(nameEnd);
+        if (typeStart == nameEnd) {
+            return 0;
+        }
+        int typeEnd = wordEnd(typeStart);
+        int cyclesStart = spacesEnd(typeEnd);
+        if (typeEnd == typeStart || cyclesStart == typeEnd) {
+            return 0;
+        }
+        int end = cyclesStart;
+        while (true) {
+            int open = spacesEnd(end);
+            if (open == _len || _text[open] != '(') {
+                break;
+            }
+            int close = wordEnd(open + 1);
+            if (close == open + 1 || close == _len || _text[close] != ')') {
+                break;
+            }
+            end = close + 1;
+        }
+        if (end == cyclesStart) {
+            return 0;
+        }
+        rotors.add(readRotor(new String(_text, p, nameEnd - p),
+                new String(_text, typeStart, typeEnd - typeStart),
+                new String(_text, cyclesStart, end - cyclesStart)));
+        return end;
+    }
+
+    /** Return a rotor named NAME of type TYPE whose permutation has
+     *  cycles CYCLES. */
+    private Rotor readRotor(String name, String type, String cycles) {
+        Permutation perm = PermutationCache.SHARED.get(cycles, _alphabet);
+        if (type.contains("M")) {
+            String notches = type.substring(1);
+            if (notches.equals("")) {
+                throw error("Moving Rotor must have a notch!");
+            }
+            return new MovingRotor(name, perm, notches);
+        } else if (type.contains("N")) {
+            return new FixedRotor(name, perm);
+        } else if (type.contains("R")) {
+            return new Reflector(name, perm);
+        } else {
+            throw error("Configuration must indicate what type of rotor!");
+        }
+    }
+
+    /** Return the index of the first character at or after P in _text
+     *  that is not an ASCII letter or digit. */
+    private int wordEnd(int p) {
+        while (p < _len && isWordChar(_text[p])) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return the index of the first character at or after P in _text
+     *  that is not a space. */
+    private int spacesEnd(int p) {
+        while (p < _len && _text[p] == ' ') {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return true iff CH is an ASCII letter or digit. */
+    private static boolean isWordChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')
+            || (ch >= '0' && ch <= '9');
+    }
+
+    /** Source of the configuration. */
+    private final Scanner _config;
+
+    /** Alphabet of the configuration. */
+    private Alphabet _alphabet;
+
+    /** The rotor descriptions, with lines joined by spaces. */
+    private char[] _text;
+
+    /** Number of characters in _text. */
+    private int _len;
+
+    /** Numbers of open and close parentheses in _text. */
+    private int _opens, _closes;
+
+}
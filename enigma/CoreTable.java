@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The core of a machine, its rotors and reflector between the two
+ *  plugboard passes, at each position of a ciphertext, for a fixed rotor
+ *  order and start. The core does not depend on the plugboard, so once
+ *  the table is built the ciphertext can be converted under any plugboard
+ *  with table lookups alone. The table also indexes the positions at
+ *  which each letter occurs in the ciphertext, which are the positions
+ *  whose core input changes when that letter is rewired.
+ *
+ *  The table holds one int per position and character, so it suits
+ *  messages and cribs rather than whole files.
+ *  @author agent
+ */
+class CoreTable {
+
+    /** The table for the first LEN alphabet indices of TEXT, enciphered
+     *  starting from the rotor order and settings of START. START's own
+     *  plugboard is ignored. */
+    CoreTable(MachineState start, int[] text, int len) {
+        MachineSpec spec = start.spec();
+        _size = spec.size();
+        if ((long) len * _size > Integer.MAX_VALUE) {
+            throw error("message too long for a core table");
+        }
+        _len = len;
+        _text = Arrays.copyOf(text, len);
+        _core = new int[len * _size];
+        int[] settings = start.settingsArray();
+        for (int t = 0; t < len; t += 1) {
+            spec.stepper().step(settings);
+            for (int c = 0; c < _size; c += 1) {
+                _core[t * _size + c] = spec.scramble(settings, c);
+            }
+        }
+        _first = new int[_size + 1];
+        for (int t = 0; t < len; t += 1) {
+            _first[text[t] + 1] += 1;
+        }
+        for (int c = 0; c < _size; c += 1) {
+            _first[c + 1] += _first[c];
+        }
+        _positions = new int[len];
+        int[] next = _first.clone();
+        for (int t = 0; t < len; t += 1) {
+            _positions[next[text[t]]] = t;
+            next[text[t]] += 1;
+        }
+    }
+
+    /** Return the length of the ciphertext. */
+    int length() {
+        return _len;
+    }
+
+    /** Return the size of the alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the ciphertext character at position T. */
+    int text(int t) {
+        return _text[t];
+    }
+
+    /** Return the image of C under the core at position T. */
+    int core(int t, int c) {
+        return _core[t * _size + c];
+    }
+
+    /** Return the number of positions at which C occurs in the
+     *  ciphertext. */
+    int count(int c) {
+        return _first[c + 1] - _first[c];
+    }
+
+    /** Return the I-th position, in increasing order, at which C occurs
+     *  in the ciphertext. */
+    int position(int c, int i) {
+        return _positions[_first[c] + i];
+    }
+
+    /** Write the decryption of the ciphertext under the plugboard whose
+     *  image of each character is given by PLUG into OUT. */
+    void convert(int[] plug, int[] out) {
+        for (int t = 0, base = 0; t < _len; t += 1, base += _size) {
+            out[t] = plug[_core[base + plug[_text[t]]]];
+        }
+    }
+
+    /** Write the decryption of the ciphertext under PLUGBOARD into OUT. */
+    void convert(Permutation plugboard, int[] out) {
+        if (plugboard.size() != _size) {
+            throw error("plugboard has the wrong alphabet");
+        }
+        int[] plug = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            plug[c] = plugboard.permute(c);
+        }
+        convert(plug, out);
+    }
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The length of the ciphertext. */
+    private final int _len;
+
+    /** The ciphertext. */
+    private final int[] _text;
+
+    /** The image of character C under the core at position T is
+     *  _core[T * _size + C]. */
+    private final int[] _core;
+
+    /** The positions at which character C occurs are _positions[_first[C]]
+     *  to _positions[_first[C + 1] - 1]. */
+    private final int[] _first, _positions;
+
+}
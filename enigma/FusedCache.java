@@ -0,0 +1,196 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded least-recently-used cache of fused machine permutations,
+ *  keyed by an encoding of the rotor settings. Every entry is a row of
+ *  width() ints in the single array table(), so a hit costs a hash probe
+ *  and no allocation. Hits and misses are counted so the capacity can be
+ *  tuned.
+ *  @author agent
+ */
+class FusedCache {
+
+    /** A cache of at most CAPACITY rows of WIDTH ints each. */
+    FusedCache(int capacity, int width) {
+        if (capacity < 1) {
+            throw error("cache capacity must be positive");
+        }
+        _width = width;
+        _keys = new long[capacity];
+        _prev = new int[capacity];
+        _next = new int[capacity];
+        _table = new int[capacity * width];
+        int slots = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        _slots = new int[slots];
+        _mask = slots - 1;
+        clear();
+    }
+
+    /** Return the number of rows I can hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Return the number of ints in each row. */
+    int width() {
+        return _width;
+    }
+
+    /** Return the array holding all my rows. */
+    int[] table() {
+        return _table;
+    }
+
+    /** Return the offset in table() of the row for KEY, making it the most
+     *  recently used, or -1 if KEY is not cached. */
+    int get(long key) {
+        int slot = find(key);
+        if (_slots[slot] == 0) {
+            _misses += 1;
+            return -1;
+        }
+        _hits += 1;
+        int row = _slots[slot] - 1;
+        if (row != _head) {
+            unlink(row);
+            pushFront(row);
+        }
+        return row * _width;
+    }
+
+    /** Add KEY, which must not be cached, evicting the least recently used
+     *  row if I am full, and return the offset in table() of its row, which
+     *  the caller must fill. */
+    int put(long key) {
+        int row;
+        if (_size < _keys.length) {
+            row = _size;
+            _size += 1;
+        } else {
+            row = _tail;
+            unlink(row);
+            remove(find(_keys[row]));
+        }
+        _keys[row] = key;
+        _slots[find(key)] = row + 1;
+        pushFront(row);
+        return row * _width;
+    }
+
+    /** Remove all rows. The hit and miss counts are kept. */
+    void clear() {
+        Arrays.fill(_slots, 0);
+        _size = 0;
+        _head = _tail = -1;
+    }
+
+    /** Return the number of calls to get that found their key. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that did not find their key. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the fraction of calls to get that found their key, or 0 if
+     *  there have been none. */
+    double hitRate() {
+        long total = _hits + _misses;
+        return total == 0 ? 0.0 : (double) _hits / total;
+    }
+
+    /** Return the slot holding KEY, or the empty slot where it would go. */
+    private int find(long key) {
+        int slot = home(key);
+        while (_slots[slot] != 0 && _keys[_slots[slot] - 1] != key) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /** Return the first slot probed for KEY. */
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    /** Empty SLOT, moving later entries of its probe run back so that
+     *  every entry stays reachable from its home slot. */
+    private void remove(int slot) {
+        int j = slot;
+        while (true) {
+            j = (j + 1) & _mask;
+            if (_slots[j] == 0) {
+                break;
+            }
+            int k = home(_keys[_slots[j] - 1]);
+            boolean movable = slot <= j ? (k <= slot || k > j)
+                : (k <= slot && k > j);
+            if (movable) {
+                _slots[slot] = _slots[j];
+                slot = j;
+            }
+        }
+        _slots[slot] = 0;
+    }
+
+    /** Remove ROW from the recency list. */
+    private void unlink(int row) {
+        if (_prev[row] >= 0) {
+            _next[_prev[row]] = _next[row];
+        } else {
+            _head = _next[row];
+        }
+        if (_next[row] >= 0) {
+            _prev[_next[row]] = _prev[row];
+        } else {
+            _tail = _prev[row];
+        }
+    }
+
+    /** Make ROW the most recently used. */
+    private void pushFront(int row) {
+        _prev[row] = -1;
+        _next[row] = _head;
+        if (_head >= 0) {
+            _prev[_head] = row;
+        }
+        _head = row;
+        if (_tail < 0) {
+            _tail = row;
+        }
+    }
+
+    /** Number of ints in each row. */
+    private final int _width;
+
+    /** The key of each row. */
+    private final long[] _keys;
+
+    /** The next more and less recently used row of each row, or -1. */
+    private final int[] _prev, _next;
+
+    /** The contents of all rows. */
+    private final int[] _table;
+
+    /** Open-addressed hash table of row + 1, or 0 for an empty slot. */
+    private final int[] _slots;
+
+    /** _slots.length - 1. */
+    private final int _mask;
+
+    /** Number of rows in use. */
+    private int _size;
+
+    /** The most and least recently used rows, or -1. */
+    private int _head, _tail;
+
+    /** Numbers of calls to get that found and did not find their key. */
+    private long _hits, _misses;
+
+}
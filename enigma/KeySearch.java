@@ -0,0 +1,408 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A brute-force search for the key of a ciphertext over every
+ *  reflector, every order of distinct fixed and moving rotors, and every
+ *  rotor setting that a Machine's configuration allows, with a fixed
+ *  plugboard. Each candidate decryption is rated by a Scorer, and the
+ *  best few candidates are kept. Candidates are numbered by rotor order
+ *  and then by setting, and ranges of numbers are searched in parallel,
+ *  each task with its own session and buffers, so that evaluating a
+ *  candidate allocates nothing unless it is among the best found so far.
+ *  Each rotor order is compiled when it is first searched.
+ *  @author agent
+ */
+class KeySearch {
+
+    /** Default number of best candidates kept. */
+    static final int DEFAULT_LIMIT = 10;
+
+    /** Default largest number of candidates searched by one task. */
+    static final int DEFAULT_GRAIN = 1 << 12;
+
+    /** A search over the rotor orders and settings allowed by MACHINE's
+     *  configuration with the plugboard given by the cycles PLUGBOARD,
+     *  rating candidates with SCORER, on the common fork/join pool. */
+    KeySearch(Machine machine, String plugboard, Scorer scorer) {
+        this(machine, plugboard, scorer, ForkJoinPool.commonPool());
+    }
+
+    /** A search as above that runs on POOL. */
+    KeySearch(Machine machine, String plugboard, Scorer scorer,
+              ForkJoinPool pool) {
+        _scorer = scorer;
+        _pool = pool;
+        _alphabet = machine.alphabet();
+        _plugboard = plugboard;
+        _scratch = new Machine(machine.alphabet(),
+                machine.numRotors(), machine.numPawls(),
+                machine.availableRotors());
+        _scratch.setPlugboard(PermutationCache.SHARED.get(plugboard,
+                machine.alphabet()));
+        _orders = rotorOrders(machine);
+        _specs = new MachineSpec[_orders.size()];
+        _size = _alphabet.size();
+        long limit = Long.MAX_VALUE / Math.max(1, _specs.length);
+        long settings = 1;
+        for (int k = 1; k < machine.numRotors(); k += 1) {
+            if (settings > limit / _size) {
+                throw error("too many candidate keys to search");
+            }
+            settings *= _size;
+        }
+        _settingsPerOrder = settings;
+    }
+
+    /** Keep the LIMIT best candidates. */
+    void setLimit(int limit) {
+        if (limit < 1) {
+            throw error("limit must be positive");
+        }
+        _limit = limit;
+    }
+
+    /** Stop searching as soon as a candidate scores at least THRESHOLD. */
+    void setThreshold(double threshold) {
+        _threshold = threshold;
+    }
+
+    /** Search at most GRAIN candidates in one task. */
+    void setGrain(int grain) {
+        _grain = Math.max(1, grain);
+    }
+
+    /** Return the number of candidate keys. */
+    long candidates() {
+        return _specs.length * _settingsPerOrder;
+    }
+
+    /** Return the number of candidates evaluated by the last search. */
+    long evaluated() {
+        return _evaluated.sum();
+    }
+
+    /** Ask a search in progress on another thread to stop early. It
+     *  returns the best candidates found so far. */
+    void stop() {
+        _stop.set(true);
+    }
+
+    /** Return the best candidates for the key of CIPHERTEXT, best first,
+     *  where whitespace is dropped and letters are upper-cased as for
+     *  Machine.convert. */
+    List<Result> search(String ciphertext) {
+        if (candidates() == 0) {
+            return new ArrayList<>();
+        }
+        int[] text = new int[ciphertext.length()];
+        int len = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = ciphertext.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                text[len] = _alphabet.toInt(Character.toUpperCase(ch));
+                len += 1;
+            }
+        }
+        _stop.set(false);
+        _evaluated.reset();
+        PriorityQueue<Result> best =
+            _pool.invoke(new Part(text, len, 0, candidates()));
+        ArrayList<Result> results = new ArrayList<>(best);
+        Collections.sort(results);
+        return results;
+    }
+
+    /** A candidate key and its score. Results are ordered best first. */
+    static final class Result implements Comparable<Result> {
+
+        /** The candidate numbered INDEX, with rotors ROTORS, setting
+         *  SETTING and plugboard PLUGBOARD, whose decryption scored
+         *  SCORE. */
+        Result(long index, String[] rotors, String setting,
+               String plugboard, double score) {
+            _index = index;
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of the rotors in each slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the rotor setting, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the score of the decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a settings line for this key, as Main accepts. */
+        String settingsLine() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.trim().isEmpty() ? line
+                : line + " " + _plugboard.trim();
+        }
+
+        @Override
+        public int compareTo(Result other) {
+            int cmp = Double.compare(other._score, _score);
+            return cmp != 0 ? cmp : Long.compare(_index, other._index);
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine() + " : " + _score;
+        }
+
+        /** The number of this candidate in the search order. */
+        private final long _index;
+
+        /** The names of the rotors in each slot. */
+        private final String[] _rotors;
+
+        /** The rotor setting. */
+        private final String _setting;
+
+        /** The plugboard cycles. */
+        private final String _plugboard;
+
+        /** The score of the decryption. */
+        private final double _score;
+    }
+
+    /** Return every choice of rotor names for MACHINE's slots: a
+     *  reflector, then distinct fixed rotors, then distinct moving rotors,
+     *  in the order of its available rotors. */
+    static List<String[]> rotorOrders(Machine machine) {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        RotorRegistry registry = new RotorRegistry(machine.availableRotors());
+        for (Rotor rotor : machine.availableRotors()) {
+            if (registry.get(rotor.name()) != rotor) {
+                continue;
+            } else if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        int pawls = machine.numPawls();
+        int numFixed = machine.numRotors() - 1 - pawls;
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[machine.numRotors()];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(fixed, numFixed, 1, order, () ->
+                    arrange(moving, pawls, 1 + numFixed, order,
+                            () -> result.add(order.clone())));
+        }
+        return result;
+    }
+
+    /** Fill slots FROM to FROM + COUNT - 1 of ORDER with each arrangement
+     *  of distinct names of NAMES in turn, calling EACH for each one. */
+    private static void arrange(List<String> names, int count, int from,
+                                String[] order, Runnable each) {
+        if (count == 0) {
+            each.run();
+            return;
+        }
+        for (String name : names) {
+            boolean used = false;
+            for (int k = 0; k < from && !used; k += 1) {
+                used = name.equals(order[k]);
+            }
+            if (!used) {
+                order[from] = name;
+                arrange(names, count - 1, from + 1, order, each);
+                order[from] = null;
+            }
+        }
+    }
+
+    /** A task searching a range of candidates, which returns the best
+     *  candidates in it, worst first. */
+    private class Part extends RecursiveTask<PriorityQueue<Result>> {
+
+        /** Searches candidates LO to HI - 1 for the key of the first LEN
+         *  indices of TEXT. */
+        Part(int[] text, int len, long lo, long hi) {
+            _text = text;
+            _len = len;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected PriorityQueue<Result> compute() {
+            if (_hi - _lo <= _grain) {
+                return searchRange();
+            }
+            long mid = (_lo + _hi) >>> 1;
+            Part left = new Part(_text, _len, _lo, mid);
+            left.fork();
+            PriorityQueue<Result> best =
+                new Part(_text, _len, mid, _hi).compute();
+            for (Result result : left.join()) {
+                offer(best, result);
+            }
+            return best;
+        }
+
+        /** Return the best candidates in my range, worst first. */
+        private PriorityQueue<Result> searchRange() {
+            PriorityQueue<Result> best =
+                new PriorityQueue<>(Collections.reverseOrder());
+            int order = (int) (_lo / _settingsPerOrder);
+            MachineState session = spec(order).newSession();
+            int n = session.spec().numRotors();
+            int[] setting = new int[n];
+            long rest = _lo % _settingsPerOrder;
+            for (int k = n - 1; k > 0; k -= 1) {
+                setting[k] = (int) (rest % _size);
+                rest /= _size;
+            }
+            int[] plain = new int[_len];
+            long evaluated = 0;
+            for (long index = _lo; index < _hi && !_stop.get();
+                 index += 1) {
+                for (int k = 1; k < n; k += 1) {
+                    session.setSetting(k, setting[k]);
+                }
+                session.convert(_text, 0, _len, plain, 0);
+                double score = _scorer.score(plain, _len);
+                evaluated += 1;
+                if (best.size() < _limit
+                    || score > best.peek().score()) {
+                    offer(best, new Result(index, _orders.get(order),
+                                           settingString(setting),
+                                           _plugboard, score));
+                }
+                if (score >= _threshold) {
+                    _stop.set(true);
+                }
+                if (!nextSetting(setting) && index + 1 < _hi) {
+                    order += 1;
+                    session = spec(order).newSession();
+                }
+            }
+            _evaluated.add(evaluated);
+            return best;
+        }
+
+        /** The ciphertext. */
+        private final int[] _text;
+
+        /** The length of the ciphertext. */
+        private final int _len;
+
+        /** The range of candidates I search. */
+        private final long _lo, _hi;
+    }
+
+    /** Return the compiled machine for rotor order ORDER, compiling it
+     *  on first use. */
+    private synchronized MachineSpec spec(int order) {
+        if (_specs[order] == null) {
+            _scratch.insertRotors(_orders.get(order));
+            _specs[order] = _scratch.compile();
+        }
+        return _specs[order];
+    }
+
+    /** Add RESULT to BEST, a heap holding the best candidates worst
+     *  first, keeping at most _limit of them. */
+    private void offer(PriorityQueue<Result> best, Result result) {
+        best.add(result);
+        if (best.size() > _limit) {
+            best.poll();
+        }
+    }
+
+    /** Advance SETTING, the settings of slots 1 and up, to the next
+     *  setting in numbering order. Return false if it wrapped around to
+     *  all zeros. */
+    private boolean nextSetting(int[] setting) {
+        for (int k = setting.length - 1; k > 0; k -= 1) {
+            setting[k] += 1;
+            if (setting[k] < _size) {
+                return true;
+            }
+            setting[k] = 0;
+        }
+        return false;
+    }
+
+    /** Return SETTING, the settings of slots 1 and up, as a string for
+     *  Machine.setRotors. */
+    private String settingString(int[] setting) {
+        char[] chars = new char[setting.length - 1];
+        for (int k = 1; k < setting.length; k += 1) {
+            chars[k - 1] = _alphabet.toChar(setting[k]);
+        }
+        return new String(chars);
+    }
+
+    /** The scorer of candidate decryptions. */
+    private final Scorer _scorer;
+
+    /** The pool running my tasks. */
+    private final ForkJoinPool _pool;
+
+    /** The alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** The plugboard cycles. */
+    private final String _plugboard;
+
+    /** The rotor names of each rotor order. */
+    private final List<String[]> _orders;
+
+    /** A machine with my plugboard, used to compile each rotor order. */
+    private final Machine _scratch;
+
+    /** The compiled machine for each rotor order, or null if it has not
+     *  been searched yet. Used only by spec, which is synchronized. */
+    private final MachineSpec[] _specs;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The number of settings of each rotor order. */
+    private final long _settingsPerOrder;
+
+    /** The number of best candidates kept. */
+    private int _limit = DEFAULT_LIMIT;
+
+    /** The score at which to stop searching. */
+    private double _threshold = Double.POSITIVE_INFINITY;
+
+    /** The largest number of candidates searched by one task. */
+    private int _grain = DEFAULT_GRAIN;
+
+    /** Set when the search should stop. */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+
+    /** The number of candidates evaluated by the last search. */
+    private final LongAdder _evaluated = new LongAdder();
+
+}
@@ -0,0 +1,232 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that converts equal-length messages for many sessions of one
+ *  MachineSpec in lockstep, one lane per session. Messages and settings
+ *  are laid out as structures of arrays: character T of every lane is
+ *  contiguous, as is the setting of slot K of every lane, so that each
+ *  step of Machine.convert(int) is applied to all lanes together. This
+ *  class does so with scalar loops over the lanes; create returns a
+ *  VectorLockstepEngine, which uses the Vector API, when it has been
+ *  compiled (see the 'vector' target of the Makefile) and the
+ *  jdk.incubator.vector module is present at run time.
+ *  @author agent
+ */
+class LockstepEngine {
+
+    /** Return an engine for SPEC that uses the Vector API if possible,
+     *  and scalar loops otherwise. */
+    static LockstepEngine create(MachineSpec spec) {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (LockstepEngine) Class.forName(VECTOR_ENGINE)
+                    .getDeclaredConstructor(MachineSpec.class)
+                    .newInstance(spec);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                return new LockstepEngine(spec);
+            }
+        }
+        return new LockstepEngine(spec);
+    }
+
+    /** A scalar engine converting messages for sessions of SPEC. */
+    LockstepEngine(MachineSpec spec) {
+        _spec = spec;
+        _size = spec.size();
+        _slots = spec.numRotors();
+        _first = spec.stepper().firstMoving();
+        _last = spec.stepper().lastMoving();
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugboard[c] = spec.plugboard(c);
+        }
+        _notches = new int[_slots][_size];
+        for (int k = _first; k <= _last; k += 1) {
+            for (int s = 0; s < _size; s += 1) {
+                _notches[k][s] = spec.stepper().notchAt(k, s) ? 1 : 0;
+            }
+        }
+    }
+
+    /** Return true iff I use the Vector API. */
+    boolean vectorized() {
+        return false;
+    }
+
+    /** Return the spec whose sessions I convert for. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Returns the conversions of MESSAGES, message I being converted by
+     *  SESSIONS[I], which is advanced, as for MachineState.convert(String).
+     *  The messages must have the same length once whitespace is
+     *  dropped. */
+    String[] convert(MachineState[] sessions, String[] messages) {
+        int lanes = sessions.length;
+        if (messages.length != lanes) {
+            throw error("there must be one session per message");
+        }
+        if (lanes == 0) {
+            return new String[0];
+        }
+        Alphabet alphabet = _spec.alphabet();
+        int len = -1;
+        int[] data = null;
+        for (int l = 0; l < lanes; l += 1) {
+            if (sessions[l].spec() != _spec) {
+                throw error("session is not of this engine's machine");
+            }
+            String msg = messages[l];
+            int t = 0;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char ch = msg.charAt(i);
+                if (!Machine.isWhitespace(ch)) {
+                    t += 1;
+                }
+            }
+            if (len < 0) {
+                len = t;
+                data = new int[len * lanes];
+            } else if (t != len) {
+                throw error("messages must have the same length");
+            }
+            t = 0;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char ch = msg.charAt(i);
+                if (!Machine.isWhitespace(ch)) {
+                    data[t * lanes + l] =
+                        alphabet.toInt(Character.toUpperCase(ch));
+                    t += 1;
+                }
+            }
+        }
+        int[][] settings = new int[_slots][lanes];
+        for (int l = 0; l < lanes; l += 1) {
+            for (int k = 0; k < _slots; k += 1) {
+                settings[k][l] = sessions[l].setting(k);
+            }
+        }
+        convert(settings, lanes, data, len);
+        if (Metrics.ENABLED) {
+            Metrics.charsConverted((long) len * lanes);
+        }
+        String[] result = new String[lanes];
+        char[] chars = new char[len];
+        for (int l = 0; l < lanes; l += 1) {
+            for (int k = 0; k < _slots; k += 1) {
+                sessions[l].setSetting(k, settings[k][l]);
+            }
+            for (int t = 0; t < len; t += 1) {
+                chars[t] = alphabet.toChar(data[t * lanes + l]);
+            }
+            result[l] = new String(chars);
+        }
+        return result;
+    }
+
+    /** Converts LEN characters of each of LANES lanes of DATA in place,
+     *  where character T of lane L is DATA[T * LANES + L], advancing the
+     *  settings SETTINGS[K][L] of each slot K of each lane L before each
+     *  character, exactly as MachineState.convert(int) does. */
+    void convert(int[][] settings, int lanes, int[] data, int len) {
+        for (int t = 0; t < len; t += 1) {
+            convertLanes(settings, 0, lanes, data, t * lanes);
+        }
+    }
+
+    /** Converts one character of each of lanes LO to HI - 1, that of lane
+     *  L being DATA[OFF + L], advancing SETTINGS as for convert. */
+    final void convertLanes(int[][] settings, int lo, int hi, int[] data,
+                            int off) {
+        advance(settings, lo, hi);
+        for (int l = lo; l < hi; l += 1) {
+            data[off + l] = _plugboard[data[off + l]];
+        }
+        for (int k = _slots - 1; k >= 0; k -= 1) {
+            through(_spec.forward(k), settings[k], lo, hi, data, off);
+        }
+        for (int k = 1; k < _slots; k += 1) {
+            through(_spec.backward(k), settings[k], lo, hi, data, off);
+        }
+        for (int l = lo; l < hi; l += 1) {
+            data[off + l] = _plugboard[data[off + l]];
+        }
+    }
+
+    /** Return the size of my alphabet. */
+    final int size() {
+        return _size;
+    }
+
+    /** Return my plugboard, as the image of each alphabet index. */
+    final int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Return 1 for each setting at which slot K is at a notch, and 0 for
+     *  the others. */
+    final int[] notches(int k) {
+        return _notches[k];
+    }
+
+    /** Advance the settings of lanes LO to HI - 1 of SETTINGS by one key
+     *  press, following RotorStepper.step. */
+    private void advance(int[][] settings, int lo, int hi) {
+        if (_first > _last) {
+            return;
+        }
+        for (int l = lo; l < hi; l += 1) {
+            boolean notched = _notches[_first][settings[_first][l]] != 0;
+            for (int i = _first; i <= _last; i += 1) {
+                boolean rightNotched = i < _last
+                    && _notches[i + 1][settings[i + 1][l]] != 0;
+                if (i == _last || rightNotched || (notched && i > _first)) {
+                    int s = settings[i][l] + 1;
+                    settings[i][l] = s == _size ? 0 : s;
+                }
+                notched = rightNotched;
+            }
+        }
+    }
+
+    /** Pass the characters of lanes LO to HI - 1 of DATA (starting at
+     *  OFF) through the wiring WIRES of rotors at settings SETTING. */
+    private void through(int[] wires, int[] setting, int lo, int hi,
+                         int[] data, int off) {
+        for (int l = lo; l < hi; l += 1) {
+            int x = data[off + l] + setting[l];
+            if (x >= _size) {
+                x -= _size;
+            }
+            int y = wires[x] - setting[l];
+            data[off + l] = y < 0 ? y + _size : y;
+        }
+    }
+
+    /** The module providing the Vector API. */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** The engine using the Vector API. */
+    private static final String VECTOR_ENGINE = "enigma.VectorLockstepEngine";
+
+    /** The spec whose sessions I convert for. */
+    private final MachineSpec _spec;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The number of rotor slots. */
+    private final int _slots;
+
+    /** The leftmost and rightmost moving slots. */
+    private final int _first, _last;
+
+    /** The plugboard, as the image of each alphabet index. */
+    private final int[] _plugboard;
+
+    /** 1 at each notch setting of each slot, and 0 elsewhere. */
+    private final int[][] _notches;
+
+}
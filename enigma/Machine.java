@@ -1,8 +1,6 @@
 package enigma;
 
-import java.util.HashSet;
 import java.util.Collection;
-import java.util.ArrayList;
 
 import static enigma.EnigmaException.*;
 
@@ -27,10 +25,40 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _registry = new RotorRegistry(allRotors);
         _rotorsUsed = new Rotor[_numRotors];
+        _advancing = new boolean[_numRotors];
         _plugBoard = new Permutation("", alpha);
     }
 
+    /** Return an immutable compiled form of my current rotors, notches
+     *  and plugboard, whose new sessions start at my current settings.
+     *  A compiled machine gives each slot its own setting, so I cannot be
+     *  compiled if repeatsRotors(). */
+    MachineSpec compile() {
+        if (_repeatedRotors) {
+            throw error("A machine using the same rotor in more than one "
+                        + "slot cannot be compiled!");
+        }
+        return new MachineSpec(_alphabet, _rotorsUsed, _pawls, _plugBoard);
+    }
+
+    /** Return a new session of compile(), independent of me and of every
+     *  other session. */
+    MachineState newSession() {
+        return compile().newSession();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return all my available rotors. */
+    Collection<Rotor> availableRotors() {
+        return _allRotors;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -50,15 +78,14 @@ class Machine {
             throw error("You tried to insert the wrong amount of rotors!");
         }
         for (int i = 0; i < rotors.length; i += 1) {
-            checkRotor(rotors[i]);
-            for (Rotor used: _allRotors) {
-                if (rotors[i].toUpperCase().equals(used.name().toUpperCase())) {
-                    _rotorsUsed[i] = used;
-                    if (used.rotates()) {
-                        count += 1;
-                    }
-                    break;
-                }
+            Rotor used = _registry.get(rotors[i]);
+            if (used == null) {
+                throw error("Rotor " + rotors[i]
+                        + " is not found in the set of available rotors!");
+            }
+            _rotorsUsed[i] = used;
+            if (used.rotates()) {
+                count += 1;
             }
         }
         if (count != numPawls()) {
@@ -66,6 +93,27 @@ class Machine {
                     + "equal to number of Moving Rotors!");
         }
         checkOrder();
+        _repeatedRotors = false;
+        for (int i = 0; i < _rotorsUsed.length; i += 1) {
+            for (int j = 0; j < i; j += 1) {
+                _repeatedRotors |= _rotorsUsed[i] == _rotorsUsed[j];
+            }
+        }
+        _stepper = new RotorStepper(_rotorsUsed, numPawls());
+        if (_fused != null) {
+            _fused.clear();
+        }
+    }
+
+    /** Return true iff the same rotor is inserted in more than one of my
+     *  slots, so that those slots share one setting. */
+    boolean repeatsRotors() {
+        return _repeatedRotors;
+    }
+
+    /** Return the rotor in slot K, where slot 0 holds the reflector. */
+    Rotor rotor(int k) {
+        return _rotorsUsed[k];
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -80,16 +128,102 @@ class Machine {
         }
     }
 
+    /** Advance my rotors to the state they would have after POSITION
+     *  further calls to convert, without stepping through every
+     *  intermediate state (see RotorStepper.seek). */
+    void seek(long position) {
+        if (_repeatedRotors) {
+            for (long n = 0; n < position; n += 1) {
+                advanceSet();
+            }
+            return;
+        }
+        int[] settings = new int[_rotorsUsed.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = _rotorsUsed[i].setting();
+        }
+        _stepper.seek(settings, position);
+        for (int i = _stepper.firstMoving(); i < settings.length; i += 1) {
+            _rotorsUsed[i].set(settings[i]);
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugBoard = plugboard;
+        if (_fused != null) {
+            _fused.clear();
+        }
+    }
+
+    /** Cache the fused permutation (plugboard, rotors, reflector and back)
+     *  of up to CAPACITY distinct rotor states, so that converting at a
+     *  cached state is a single lookup. A CAPACITY of 0 turns caching
+     *  off. */
+    void cacheFused(int capacity) {
+        if (capacity == 0) {
+            _fused = null;
+            return;
+        }
+        long states = 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            if (states > Long.MAX_VALUE / _alphabet.size()) {
+                throw error("Too many rotor states to cache!");
+            }
+            states *= _alphabet.size();
+        }
+        _fused = new FusedCache(capacity, _alphabet.size());
+    }
+
+    /** Return the cache of fused permutations, or null if there is none.
+     *  Its hitRate() reports how often a rotor state recurred. */
+    FusedCache fusedCache() {
+        return _fused;
+    }
+
+    /** Return the settings of all my rotors, encoded as one number. */
+    private long stateKey() {
+        long key = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            key = key * _alphabet.size() + _rotorsUsed[i].setting();
+        }
+        return key;
+    }
+
+    /** Precompute the conversion tables of all my available rotors, so
+     *  that each rotor pass in convert is a single table lookup. */
+    void precomputeRotors() {
+        for (Rotor rotor : _allRotors) {
+            rotor.precompute();
+        }
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (Metrics.ENABLED) {
+            Metrics.charConverted();
+        }
         advanceSet();
+        if (_fused != null) {
+            long key = stateKey();
+            int row = _fused.get(key);
+            if (row < 0) {
+                row = _fused.put(key);
+                int[] table = _fused.table();
+                for (int x = 0; x < _fused.width(); x += 1) {
+                    table[row + x] = convertAtSetting(x);
+                }
+            }
+            return _fused.table()[row + c];
+        }
+        return convertAtSetting(c);
+    }
+
+    /** Return the conversion of C at the current rotor settings, without
+     *  advancing the machine. */
+    private int convertAtSetting(int c) {
         c = _plugBoard.permute(c);
         for (int p = numRotors() - 1; p > -1; p -= 1) {
             c = _rotorsUsed[p].convertForward(c);
@@ -102,36 +236,99 @@ class Machine {
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly. Whitespace is dropped and letters are
+     *  upper-cased before conversion. */
     String convert(String msg) {
-        String result = "";
-        msg = msg.replaceAll("\\s+", "");
-        msg = msg.toUpperCase();
-        for (int i = 0; i < msg.length(); i += 1) {
-            result += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] chars = msg.toCharArray();
+        int len = convert(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, len);
+    }
+
+    /** Converts the LEN characters of IN starting at OFF, writing the
+     *  results into OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly. As for convert(String), whitespace is dropped
+     *  and letters are upper-cased first. Returns the number of characters
+     *  written, which is at most LEN. IN and OUT may be the same array
+     *  when OUTOFF <= OFF, so messages can be converted in place. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = in[i];
+            if (!isWhitespace(ch)) {
+                int c = _alphabet.toInt(Character.toUpperCase(ch));
+                out[k] = _alphabet.toChar(convert(c));
+                k += 1;
+            }
+        }
+        return k - outOff;
+    }
+
+    /** Converts the LEN alphabet indices of IN starting at OFF, writing
+     *  the results into OUT starting at OUTOFF and updating the state of
+     *  the rotors accordingly. IN and OUT may be the same array when
+     *  OUTOFF <= OFF. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(in[off + i]);
+        }
+    }
+
+    /** Return true iff CH is a whitespace character in the sense of the
+     *  regular expression class \s. */
+    static boolean isWhitespace(char ch) {
+        switch (ch) {
+        case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+            return true;
+        default:
+            return false;
         }
-        return result;
     }
 
-    /** Places all rotors that need to be advanced
-    into a set and advances them. */
+    /** Advances all rotors whose pawls engage, without allocating.
+     *  The rightmost rotor always advances; any other moving rotor
+     *  advances if the rotor to its right is at a notch, or if it is at
+     *  a notch itself and the rotor to its left also moves (double
+     *  stepping). All notches are sampled before any rotor moves, and a
+     *  rotor inserted in several slots advances only once. */
     private void advanceSet() {
-        HashSet<Rotor> adset = new HashSet<>();
-        if (_rotorsUsed[_rotorsUsed.length - 1].rotates()) {
-            adset.add(_rotorsUsed[_rotorsUsed.length - 1]);
-            for (int i = _rotorsUsed.length - 1;
-                 _rotorsUsed[i].rotates(); i -= 1) {
-                if (_rotorsUsed[i].atNotch() && _rotorsUsed[i - 1].rotates()) {
-                    adset.add(_rotorsUsed[i]);
-                    if (_rotorsUsed[i - 1].rotates()) {
-                        adset.add(_rotorsUsed[i - 1]);
-                    }
+        int last = _rotorsUsed.length - 1;
+        int first = _rotorsUsed.length - numPawls();
+        if (first > last) {
+            return;
+        }
+        boolean notched = _rotorsUsed[first].atNotch();
+        for (int i = first; i <= last; i += 1) {
+            boolean rightNotched = i < last && _rotorsUsed[i + 1].atNotch();
+            _advancing[i] = i == last || rightNotched
+                    || (notched && i > first);
+            if (Metrics.ENABLED && notched && i > first && i < last
+                && !rightNotched) {
+                Metrics.doubleStep();
+            }
+            notched = rightNotched;
+        }
+        for (int i = first; i <= last; i += 1) {
+            if (_advancing[i] && !advancedEarlier(i)) {
+                _rotorsUsed[i].advance();
+                if (Metrics.ENABLED) {
+                    Metrics.rotorStep();
                 }
             }
-            for (Rotor adv: adset) {
-                adv.advance();
+        }
+    }
+
+    /** Return true iff the rotor in slot K also sits in an earlier slot
+     *  that advanced on this step. */
+    private boolean advancedEarlier(int k) {
+        if (!_repeatedRotors) {
+            return false;
+        }
+        for (int i = 0; i < k; i += 1) {
+            if (_advancing[i] && _rotorsUsed[i] == _rotorsUsed[k]) {
+                return true;
             }
         }
+        return false;
     }
 
     /** Checks if order of rotors is correct. Throws error otherwise. */
@@ -160,21 +357,6 @@ class Machine {
         }
     }
 
-    /** Checks if Rotor name is in set of available rotors.
-     *  Throws error otherwise.
-     * @param name is the Rotor's name. */
-    private void checkRotor(String name) {
-        ArrayList<String> rotorNames = new ArrayList<>();
-        for (Rotor rotor: _allRotors) {
-            rotorNames.add(rotor.name().toUpperCase());
-        }
-        if (!rotorNames.contains(name.toUpperCase())) {
-            throw error("Rotor " + name
-                    + " is not found in the set of available rotors!");
-
-        }
-    }
-
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -187,9 +369,24 @@ class Machine {
     /** Collection of all rotors. */
     private Collection<Rotor> _allRotors;
 
+    /** _allRotors indexed by name. */
+    private RotorRegistry _registry;
+
     /** list of rotors that are used in machine. */
     private Rotor[] _rotorsUsed;
 
+    /** Which slots advance on the current step; reused by advanceSet. */
+    private boolean[] _advancing;
+
+    /** True iff the same rotor was inserted in more than one slot. */
+    private boolean _repeatedRotors;
+
+    /** The stepping rule of the rotors in _rotorsUsed. */
+    private RotorStepper _stepper;
+
+    /** Cache of fused permutations by rotor state, or null. */
+    private FusedCache _fused;
+
     /** plugboard permutation. */
     private Permutation _plugBoard;
 
@@ -0,0 +1,170 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable, compiled description of a configured Enigma machine: the
+ *  wiring of the rotor in each slot, the notches of its moving rotors, and
+ *  its plugboard. Rotor settings are kept separately, in MachineStates, so
+ *  one MachineSpec can be shared by any number of independent sessions on
+ *  any number of threads. Each slot has its own setting, so a machine
+ *  using the same rotor in more than one slot cannot be compiled.
+ *  @author agent
+ */
+final class MachineSpec {
+
+    /** A machine over ALPHABET whose slots hold SLOTS, the last PAWLS of
+     *  which move, with plugboard PLUGBOARD. New sessions start with the
+     *  current settings of SLOTS. */
+    MachineSpec(Alphabet alphabet, Rotor[] slots, int pawls,
+                Permutation plugboard) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _stepper = new RotorStepper(slots, pawls);
+        _names = new String[slots.length];
+        _forward = new int[slots.length][_size];
+        _backward = new int[slots.length][_size];
+        _initial = new int[slots.length];
+        for (int k = 0; k < slots.length; k += 1) {
+            Permutation perm = slots[k].permutation();
+            _names[k] = slots[k].name();
+            for (int i = 0; i < _size; i += 1) {
+                _forward[k][i] = perm.permute(i);
+                _backward[k][i] = perm.invert(i);
+            }
+            _initial[k] = slots[k].setting();
+        }
+        _plugboard = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _plugboard[i] = plugboard.permute(i);
+        }
+    }
+
+    /** Return a new session starting at the settings I was compiled
+     *  with. */
+    MachineState newSession() {
+        return new MachineState(this, _initial.clone());
+    }
+
+    /** Return a new session whose rotors are set according to SETTING, a
+     *  string of numRotors() - 1 characters as for Machine.setRotors. */
+    MachineState newSession(String setting) {
+        if (setting.length() != numRotors() - 1) {
+            throw error("Wrong amount of settings for this machine.");
+        }
+        int[] settings = new int[numRotors()];
+        for (int k = 1; k < settings.length; k += 1) {
+            char ch = setting.charAt(k - 1);
+            if (!_alphabet.contains(ch)) {
+                throw error("Setting %c is not in the alphabet", ch);
+            }
+            settings[k] = _alphabet.toInt(ch);
+        }
+        return new MachineState(this, settings);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _names.length;
+    }
+
+    /** Return the name of the rotor in slot K. */
+    String rotorName(int k) {
+        return _names[k];
+    }
+
+    /** Return the stepping rule of my moving rotors. */
+    RotorStepper stepper() {
+        return _stepper;
+    }
+
+    /** Return the wiring of the rotor in slot K at setting 0, as the
+     *  image of each alphabet index. The result must not be modified. */
+    int[] forward(int k) {
+        return _forward[k];
+    }
+
+    /** Return the inverse of forward(K). The result must not be
+     *  modified. */
+    int[] backward(int k) {
+        return _backward[k];
+    }
+
+    /** Return the image of C under my plugboard. */
+    int plugboard(int c) {
+        return _plugboard[c];
+    }
+
+    /** Return the conversion of C by my plugboard, rotors and reflector
+     *  with rotor settings SETTINGS, without advancing them. */
+    int convert(int[] settings, int c) {
+        return _plugboard[scramble(settings, _plugboard[c])];
+    }
+
+    /** Return the conversion of C by my rotors and reflector alone (the
+     *  path between the two plugboard passes) with rotor settings
+     *  SETTINGS. */
+    int scramble(int[] settings, int c) {
+        int last = _forward.length - 1;
+        for (int k = last; k >= 0; k -= 1) {
+            c = through(_forward[k], settings[k], c);
+        }
+        for (int k = 1; k <= last; k += 1) {
+            c = through(_backward[k], settings[k], c);
+        }
+        return c;
+    }
+
+    /** Fill TABLE with the conversion of each character, plugboard
+     *  included, with rotor settings SETTINGS. */
+    void fused(int[] settings, int[] table) {
+        for (int c = 0; c < _size; c += 1) {
+            table[c] = convert(settings, c);
+        }
+    }
+
+    /** Return the result of passing C through the wiring WIRES of a rotor
+     *  at setting S. */
+    private int through(int[] wires, int s, int c) {
+        int x = c + s;
+        if (x >= _size) {
+            x -= _size;
+        }
+        int y = wires[x] - s;
+        return y < 0 ? y + _size : y;
+    }
+
+    /** The common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** The size of _alphabet. */
+    private final int _size;
+
+    /** The stepping rule of my moving rotors. */
+    private final RotorStepper _stepper;
+
+    /** The names of the rotors in each slot. */
+    private final String[] _names;
+
+    /** The permutation of the rotor in each slot at setting 0. */
+    private final int[][] _forward;
+
+    /** The inverse permutation of the rotor in each slot at setting 0. */
+    private final int[][] _backward;
+
+    /** The plugboard permutation. */
+    private final int[] _plugboard;
+
+    /** The settings of each slot when I was compiled. */
+    private final int[] _initial;
+
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+/** One session of a MachineSpec: nothing but the current setting of each
+ *  rotor slot. Sessions are cheap to create and copy, and independent
+ *  sessions of the same spec may be used on different threads.
+ *  @author agent
+ */
+final class MachineState {
+
+    /** A session of SPEC whose slots have settings SETTINGS. */
+    MachineState(MachineSpec spec, int[] settings) {
+        _spec = spec;
+        _settings = settings;
+    }
+
+    /** Return my spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the current setting of slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Set the setting of slot K to S. */
+    void setSetting(int k, int s) {
+        _settings[k] = s;
+    }
+
+    /** Return a copy of the settings of all my slots. */
+    int[] settingsArray() {
+        return _settings.clone();
+    }
+
+    /** Return a session of my spec in my current state. */
+    MachineState copy() {
+        return new MachineState(_spec, _settings.clone());
+    }
+
+    /** Advance my rotors to the state after POSITION further calls to
+     *  convert. */
+    void seek(long position) {
+        _spec.stepper().seek(_settings, position);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors, exactly as Machine.convert does. */
+    int convert(int c) {
+        if (Metrics.ENABLED) {
+            Metrics.charConverted();
+        }
+        _spec.stepper().step(_settings);
+        return _spec.convert(_settings, c);
+    }
+
+    /** Converts the LEN alphabet indices of IN starting at OFF, writing
+     *  the results into OUT starting at OUTOFF. IN and OUT may be the same
+     *  array when OUTOFF <= OFF. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(in[off + i]);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, as for Machine.convert:
+     *  whitespace is dropped and letters are upper-cased first. */
+    String convert(String msg) {
+        Alphabet alphabet = _spec.alphabet();
+        char[] chars = msg.toCharArray();
+        int len = 0;
+        for (char ch : chars) {
+            if (!Machine.isWhitespace(ch)) {
+                int c = alphabet.toInt(Character.toUpperCase(ch));
+                chars[len] = alphabet.toChar(convert(c));
+                len += 1;
+            }
+        }
+        return new String(chars, 0, len);
+    }
+
+    /** The spec I am a session of. */
+    private final MachineSpec _spec;
+
+    /** The current setting of each slot. */
+    private final int[] _settings;
+
+}
@@ -0,0 +1,809 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author agent
+ */
+public class MachineTest {
+
+    /** System property that, when true, makes checkLockstep require the
+     *  Vector API engine (see the vector-check target of the Makefile). */
+    private static final String VECTOR_REQUIRED = "enigma.test.vector";
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a fresh collection of the naval rotors, with the notches
+     *  of the Navy's multi-notch rotors, plus a rotor X whose notches
+     *  are on adjacent positions. */
+    private ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = { "I", "II", "III", "IV", "V",
+                            "VI", "VII", "VIII" };
+        String[] notches = { "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM" };
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), UPPER),
+                    notches[i]));
+        }
+        rotors.add(new MovingRotor("X",
+                new Permutation(NAVALA.get("I"), UPPER), "ABCXYZ"));
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new FixedRotor("Gamma",
+                new Permutation(NAVALA.get("Gamma"), UPPER)));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C",
+                new Permutation(NAVALA.get("C"), UPPER)));
+        return rotors;
+    }
+
+    /** Return a machine with PAWLS pawls, rotors ROTORS, and SETTING. */
+    private Machine machine(int pawls, String[] rotors, String setting) {
+        Machine machine = new Machine(UPPER, rotors.length, pawls,
+                navalRotors());
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        return machine;
+    }
+
+    /** Advance ROTORS once using the original set-based stepping rule. */
+    private static void referenceAdvance(Rotor[] rotors) {
+        HashSet<Rotor> adset = new HashSet<>();
+        if (rotors[rotors.length - 1].rotates()) {
+            adset.add(rotors[rotors.length - 1]);
+            for (int i = rotors.length - 1; rotors[i].rotates(); i -= 1) {
+                if (rotors[i].atNotch() && rotors[i - 1].rotates()) {
+                    adset.add(rotors[i]);
+                    adset.add(rotors[i - 1]);
+                }
+            }
+            for (Rotor adv : adset) {
+                adv.advance();
+            }
+        }
+    }
+
+    /** Check that stepping a machine with PAWLS pawls, rotors ROTORS and
+     *  SETTING agrees with the original rule for STEPS key presses. */
+    private void checkStepping(int pawls, String[] rotors, String setting,
+                               int steps) {
+        Machine actual = machine(pawls, rotors, setting);
+        Machine model = machine(pawls, rotors, setting);
+        Rotor[] expected = new Rotor[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            expected[i] = model.rotor(i);
+        }
+        for (int n = 0; n < steps; n += 1) {
+            referenceAdvance(expected);
+            actual.convert(0);
+            for (int i = 1; i < rotors.length; i += 1) {
+                assertEquals(msg(String.join(" ", rotors),
+                                 "setting %d after %d steps", i, n + 1),
+                             expected[i].setting(), actual.rotor(i).setting());
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSingleNotchStepping() {
+        checkStepping(3, new String[] {"B", "Beta", "III", "IV", "I"},
+                      "AXLE", 20000);
+        checkStepping(3, new String[] {"C", "Gamma", "I", "II", "III"},
+                      "AADU", 20000);
+    }
+
+    @Test
+    public void checkMultiNotchStepping() {
+        checkStepping(3, new String[] {"B", "Beta", "VI", "VII", "VIII"},
+                      "AZLY", 20000);
+        checkStepping(4, new String[] {"C", "VIII", "II", "VI", "I"},
+                      "ZMEQ", 20000);
+    }
+
+    @Test
+    public void checkAdjacentNotchStepping() {
+        checkStepping(3, new String[] {"B", "Beta", "X", "X", "V"},
+                      "AXYZ", 20000);
+        checkStepping(4, new String[] {"B", "X", "X", "X", "X"},
+                      "ZABC", 20000);
+    }
+
+    @Test
+    public void checkNoPawls() {
+        checkStepping(0, new String[] {"B", "Beta", "Gamma"}, "AB", 100);
+    }
+
+    @Test
+    public void checkBulkConvert() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        String msg = "FROM his shoulder\tHiawatha Took the camera";
+        String expected = machine(3, rotors, "AXLE").convert(msg);
+        char[] chars = msg.toCharArray();
+        int len = machine(3, rotors, "AXLE").convert(chars, 0,
+                chars.length, chars, 0);
+        assertEquals(expected, new String(chars, 0, len));
+        int[] indices = new int[expected.length()];
+        for (int i = 0; i < indices.length; i += 1) {
+            indices[i] = UPPER.toInt(expected.charAt(i));
+        }
+        machine(3, rotors, "AXLE").convert(indices, 0, indices.length,
+                indices, 0);
+        StringBuilder decoded = new StringBuilder();
+        for (int c : indices) {
+            decoded.append(UPPER.toChar(c));
+        }
+        assertEquals(msg.replaceAll("\\s+", "").toUpperCase(),
+                decoded.toString());
+    }
+
+    /** Check that seeking a machine with PAWLS pawls, rotors ROTORS and
+     *  SETTING to each of POSITIONS agrees with stepping it there. */
+    private void checkSeek(int pawls, String[] rotors, String setting,
+                           long... positions) {
+        Machine stepped = machine(pawls, rotors, setting);
+        long steps = 0;
+        for (long position : positions) {
+            for (; steps < position; steps += 1) {
+                stepped.convert(0);
+            }
+            Machine seeked = machine(pawls, rotors, setting);
+            seeked.seek(position);
+            for (int i = 1; i < rotors.length; i += 1) {
+                assertEquals(msg(String.join(" ", rotors),
+                                 "setting %d at %d", i, position),
+                             stepped.rotor(i).setting(),
+                             seeked.rotor(i).setting());
+            }
+        }
+    }
+
+    @Test
+    public void checkSeek() {
+        long[] positions = new long[200];
+        for (int i = 1; i < positions.length; i += 1) {
+            positions[i] = positions[i - 1] + 1 + (i * 7919L) % 1500;
+        }
+        checkSeek(3, new String[] {"B", "Beta", "III", "IV", "I"},
+                  "AXLE", positions);
+        checkSeek(3, new String[] {"B", "Beta", "VI", "VII", "VIII"},
+                  "AZLY", positions);
+        checkSeek(4, new String[] {"C", "VIII", "II", "VI", "I"},
+                  "ZMEQ", positions);
+        checkSeek(3, new String[] {"B", "Gamma", "X", "V", "VI"},
+                  "QXYZ", positions);
+        checkSeek(0, new String[] {"B", "Beta", "Gamma"}, "AB", 0, 5, 300);
+    }
+
+    @Test
+    public void checkSeekBeyondPeriod() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        long period = 26L * 25 * 26;
+        Machine start = machine(3, rotors, "AXLE");
+        start.seek(100);
+        for (long n = 1; n <= 3; n += 1) {
+            Machine far = machine(3, rotors, "AXLE");
+            far.seek(100 + n * period * 1000003);
+            for (int i = 1; i < rotors.length; i += 1) {
+                assertEquals(start.rotor(i).setting(), far.rotor(i).setting());
+            }
+        }
+    }
+
+    @Test
+    public void checkParallelEngine() {
+        String[] rotors = {"B", "Beta", "VI", "VII", "VIII"};
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 50000; i += 1) {
+            msg.append((char) ('A' + (i * 31 + i / 7) % 26));
+        }
+        Machine serial = machine(3, rotors, "AZLY");
+        Machine parallel = machine(3, rotors, "AZLY");
+        ParallelEngine engine = new ParallelEngine(parallel,
+                ForkJoinPool.commonPool(), 1000);
+        for (int k = 0; k < 2; k += 1) {
+            assertEquals(serial.convert(msg.toString()),
+                         engine.convert(msg.toString()));
+        }
+        String[] repeated = {"B", "Beta", "X", "X", "V"};
+        serial = machine(3, repeated, "AXYZ");
+        engine = new ParallelEngine(machine(3, repeated, "AXYZ"),
+                                    ForkJoinPool.commonPool(), 1000);
+        assertEquals(serial.convert(msg.toString()),
+                     engine.convert(msg.toString()));
+        try {
+            serial.compile();
+            fail("compiled a machine with a repeated rotor");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkSessions() throws InterruptedException {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine machine = machine(3, rotors, "AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", UPPER));
+        MachineSpec spec = machine.compile();
+        int[] expected = new int[30000];
+        for (int i = 0; i < expected.length; i += 1) {
+            expected[i] = machine.convert(i % 26);
+        }
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int k = t;
+            threads[t] = new Thread(() -> {
+                MachineState session = spec.newSession();
+                MachineState copy = null;
+                ok[k] = true;
+                for (int i = 0; i < expected.length; i += 1) {
+                    ok[k] &= session.convert(i % 26) == expected[i];
+                    if (i == 1000) {
+                        copy = session.copy();
+                    }
+                }
+                for (int i = 1001; i < 2000; i += 1) {
+                    ok[k] &= copy.convert(i % 26) == expected[i];
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertTrue(ok[t]);
+        }
+        MachineState session = spec.newSession("AXLE");
+        session.seek(20000);
+        assertEquals(expected[20000], session.convert(20000 % 26));
+    }
+
+    @Test
+    public void checkFusedCache() {
+        String[] rotors = {"B", "Beta", "VI", "VII", "VIII"};
+        Machine plain = machine(3, rotors, "AZLY");
+        Machine cached = machine(3, rotors, "AZLY");
+        cached.cacheFused(1000);
+        for (int i = 0; i < 20000; i += 1) {
+            if (i % 500 == 0) {
+                plain.setRotors("AZLY");
+                cached.setRotors("AZLY");
+            }
+            if (i == 12000) {
+                Permutation plugboard = new Permutation("(AQ) (XY)", UPPER);
+                plain.setPlugboard(plugboard);
+                cached.setPlugboard(plugboard);
+            }
+            assertEquals(plain.convert(i % 26), cached.convert(i % 26));
+        }
+        FusedCache cache = cached.fusedCache();
+        assertEquals(20000, cache.hits() + cache.misses());
+        assertTrue(cache.hitRate() > 0.0 && cache.hitRate() < 1.0);
+    }
+
+    @Test
+    public void checkPrecomputedMachine() {
+        String[] rotors = {"B", "Beta", "VI", "VII", "VIII"};
+        Machine plain = machine(3, rotors, "AZLY");
+        plain.setPlugboard(new Permutation("(AQ) (XY)", UPPER));
+        Machine source = machine(3, rotors, "AZLY");
+        source.setPlugboard(new Permutation("(AQ) (XY)", UPPER));
+        PrecomputedMachine fast = new PrecomputedMachine(source);
+        assertTrue(fast.precomputed());
+        assertEquals(26 * 26 * 26 * (26 + 4), fast.tableBytes());
+        for (int i = 0; i < 40000; i += 1) {
+            if (i == 30000) {
+                plain.setRotors("AQRS");
+                fast.setRotors("AQRS");
+            }
+            assertEquals(plain.convert(i % 26), fast.convert(i % 26));
+        }
+        plain.setRotors("BXLE");
+        fast.setRotors("BXLE");
+        assertEquals(plain.convert("FROM his shoulder Hiawatha"),
+                     fast.convert("FROM his shoulder Hiawatha"));
+        PrecomputedMachine fallback = new PrecomputedMachine(
+                machine(3, rotors, "AZLY"), 1000);
+        assertFalse(fallback.precomputed());
+        assertEquals(machine(3, rotors, "AZLY").convert("HIAWATHA"),
+                     fallback.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void checkBatch() throws InterruptedException {
+        Machine template = new Machine(UPPER, 5, 3, navalRotors());
+        BatchProcessor batch = new BatchProcessor(template);
+        ArrayList<String> settings = new ArrayList<>();
+        ArrayList<String> messages = new ArrayList<>();
+        for (int k = 0; k < 500; k += 1) {
+            settings.add(k % 2 == 0 ? "* B Beta III IV I AXLE (HQ) (EX)"
+                         : "*  C Gamma VI II V " + (char) ('A' + k % 26)
+                         + "BCD");
+            messages.add("Message for " + (char) ('a' + k % 26) + " and so on");
+        }
+        String[] results = batch.process(settings, messages);
+        assertEquals(2, batch.cached());
+        for (int k = 0; k < results.length; k += 1) {
+            Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+            Main.setUp(machine, settings.get(k));
+            assertEquals(machine.convert(messages.get(k)), results[k]);
+        }
+
+        String[] orders = { "B Beta III IV I", "C Gamma VI II V",
+                            "B Gamma I II III", "C Beta VII VIII IV",
+                            "B Beta V VI VII" };
+        ArrayList<String> mixed = new ArrayList<>();
+        for (int k = 0; k < settings.size(); k += 1) {
+            mixed.add("* " + orders[k % orders.length] + " AXLE");
+        }
+        BatchProcessor shared = new BatchProcessor(template,
+                ForkJoinPool.commonPool(), 2);
+        String[] expected = batch.process(mixed, messages);
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int k = t;
+            threads[t] = new Thread(() -> {
+                ok[k] = true;
+                for (int n = 0; n < 5; n += 1) {
+                    ok[k] &= Arrays.equals(expected,
+                                           shared.process(mixed, messages));
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertTrue(ok[t]);
+        }
+    }
+
+    @Test
+    public void checkRotorRegistry() {
+        ArrayList<Rotor> rotors = navalRotors();
+        rotors.add(new FixedRotor("beta",
+                new Permutation(NAVALA.get("Gamma"), UPPER)));
+        RotorRegistry registry = new RotorRegistry(rotors);
+        assertEquals(rotors.size() - 1, registry.size());
+        assertTrue(registry.get("BETA") == rotors.get(9));
+        assertTrue(registry.get("viii") == rotors.get(7));
+        assertNull(registry.get("IX"));
+        Machine machine = machine(3, new String[] {"b", "BETA", "iii",
+                                                    "IV", "i"}, "AXLE");
+        assertEquals(machine(3, new String[] {"B", "Beta", "III", "IV", "I"},
+                             "AXLE").convert("FROM"),
+                     machine.convert("FROM"));
+        try {
+            machine.insertRotors(new String[] {"B", "Beta", "III", "IV",
+                                               "IX"});
+            fail("missing rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Rotor IX is not found in the set of available "
+                         + "rotors!", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkConfigParser() {
+        Machine machine = new ConfigParser(new Scanner(
+                "A-Z\n 5  3\n"
+                + "I MQ  (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+                + "Beta\nN (ALBEVFCYODJWUGNMQTZSKPR)(HIX)\n"
+                + "junk ( text ) III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG)\n"
+                + "(N) IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+                + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+                + "   (RX) (SZ) (TV)\n")).parse();
+        ArrayList<String> names = new ArrayList<>();
+        for (Rotor rotor : machine.availableRotors()) {
+            names.add(rotor.name());
+        }
+        assertEquals("[I, Beta, III, IV, B]", names.toString());
+        assertEquals(5, machine.numRotors());
+        assertEquals(3, machine.numPawls());
+        Main.setUp(machine, "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine.convert("FROM his shoulder Hiawatha"));
+        try {
+            new ConfigParser(new Scanner("A-Z\n5 3\nI MQ (AB\n"))
+                .parse();
+            fail("unbalanced parentheses accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Configuration file not in the right format!",
+                         excp.getMessage());
+        }
+    }
+
+    /** Run Main with OPTION, if not null, on configuration file CONFIG
+     *  and input file INPUT, returning its output. */
+    private String runMain(String option, File config, File input)
+        throws IOException {
+        File output = File.createTempFile("enigma", ".out");
+        output.deleteOnExit();
+        String[] args = { config.getPath(), input.getPath(),
+                          output.getPath() };
+        if (option != null) {
+            args = new String[] { option, args[0], args[1], args[2] };
+        }
+        try {
+            new Main(args).process();
+            fail("invalid input accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        return new String(Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void checkStreamError() throws IOException {
+        File config = File.createTempFile("enigma", ".conf");
+        config.deleteOnExit();
+        Files.write(config.toPath(), (
+                "A-Z\n5 3\n"
+                + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+                + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+                + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+                + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+                + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+                + "   (RX) (SZ) (TV)\n").getBytes());
+        StringBuilder text = new StringBuilder("* B Beta III IV I AXLE\n"
+                                               + "HELLO\n");
+        for (int i = 0; i < 100000; i += 1) {
+            text.append('A');
+        }
+        text.append("1\n");
+        File input = File.createTempFile("enigma", ".in");
+        input.deleteOnExit();
+        Files.write(input.toPath(), text.toString().getBytes());
+        String expected = runMain(null, config, input);
+        assertEquals(5 + 1 + System.lineSeparator().length(),
+                     expected.length());
+        assertEquals(expected, runMain(Main.STREAM, config, input));
+    }
+
+    @Test
+    public void checkCompiledConfig() throws IOException {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        File source = File.createTempFile("enigma", ".conf");
+        source.deleteOnExit();
+        Files.write(source.toPath(), "A-Z\n5 3\n".getBytes());
+        File file = File.createTempFile("enigma", ".bin");
+        file.deleteOnExit();
+        CompiledConfig.write(machine, source.getPath(), file.getPath());
+        assertTrue(CompiledConfig.isCompiled(file.getPath()));
+        Machine loaded = CompiledConfig.read(file.getPath());
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        String settings = "* B Beta VI VII X AZLY (HQ) (EX) (IP)";
+        Main.setUp(machine, settings);
+        Main.setUp(loaded, settings);
+        String msg = "FROM his shoulder Hiawatha Took the camera of rosewood";
+        assertEquals(machine.convert(msg), loaded.convert(msg));
+
+        long modified = source.lastModified();
+        Files.write(source.toPath(), "A-Z\n5 2\n".getBytes());
+        assertTrue(source.setLastModified(modified + 2000));
+        try {
+            CompiledConfig.read(file.getPath());
+            fail("out-of-date file accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith(file.getPath()
+                                                    + " is out of date"));
+        }
+        source.delete();
+        assertEquals(5, CompiledConfig.read(file.getPath()).numRotors());
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+        try {
+            CompiledConfig.read(file.getPath());
+            fail("corrupt file accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(file.getPath() + " is corrupt", excp.getMessage());
+        }
+        bytes[7] += 1;
+        Files.write(file.toPath(), bytes);
+        try {
+            CompiledConfig.read(file.getPath());
+            fail("file of another version accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(file.getPath()
+                         + " was compiled by an incompatible version",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkLockstep() {
+        Machine machine = machine(3, new String[] {"B", "Beta", "VI", "VII",
+                                                   "X"}, "AAAA");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        MachineSpec spec = machine.compile();
+        if (Boolean.getBoolean(VECTOR_REQUIRED)) {
+            assertTrue("Vector API engine not available",
+                       LockstepEngine.create(spec).vectorized());
+        }
+        Random random = new Random(19);
+        int lanes = 37;
+        String[] settings = new String[lanes];
+        String[] messages = new String[lanes];
+        for (int l = 0; l < lanes; l += 1) {
+            char[] setting = new char[4];
+            for (int k = 0; k < setting.length; k += 1) {
+                setting[k] = (char) ('A' + random.nextInt(26));
+            }
+            settings[l] = new String(setting);
+            char[] msg = new char[700];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = i % 50 == 49 ? ' ' : (char) ('a' + random.nextInt(26));
+            }
+            messages[l] = new String(msg);
+        }
+        for (LockstepEngine engine : new LockstepEngine[] {
+                new LockstepEngine(spec), LockstepEngine.create(spec) }) {
+            MachineState[] sessions = new MachineState[lanes];
+            for (int l = 0; l < lanes; l += 1) {
+                sessions[l] = spec.newSession(settings[l]);
+            }
+            String[] results = engine.convert(sessions, messages);
+            for (int l = 0; l < lanes; l += 1) {
+                MachineState expected = spec.newSession(settings[l]);
+                assertEquals(msg("lockstep", "lane %d", l),
+                             expected.convert(messages[l]),
+                             results[l]);
+                assertArrayEquals(expected.settingsArray(),
+                                  sessions[l].settingsArray());
+            }
+        }
+        try {
+            new LockstepEngine(spec).convert(
+                new MachineState[] {spec.newSession(), spec.newSession()},
+                new String[] {"ABC", "AB C D"});
+            fail("messages of different lengths accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("messages must have the same length",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkKeySearch() {
+        Machine machine = new Machine(UPPER, 3, 2, navalRotors());
+        Main.setUp(machine, "* C VII III QF (AB) (CD)");
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        String cipher = machine.convert(plain);
+        int[] crib = new int[plain.length()];
+        for (int i = 0; i < crib.length; i += 1) {
+            crib[i] = UPPER.toInt(plain.charAt(i));
+        }
+        Scorer matches = (text, len) -> {
+            int score = 0;
+            for (int i = 0; i < len; i += 1) {
+                score += text[i] == crib[i] ? 1 : 0;
+            }
+            return score;
+        };
+        KeySearch search = new KeySearch(new Machine(UPPER, 3, 2,
+                navalRotors()), "(AB) (CD)", matches);
+        search.setLimit(3);
+        search.setGrain(100);
+        assertEquals(2 * 9 * 8 * 26 * 26, search.candidates());
+        List<KeySearch.Result> results = search.search(cipher);
+        assertEquals(search.candidates(), search.evaluated());
+        assertEquals(3, results.size());
+        assertEquals("* C VII III QF (AB) (CD)", results.get(0).settingsLine());
+        assertEquals(plain.length(), results.get(0).score(), 0.0);
+        assertTrue(results.get(1).score() <= results.get(0).score());
+        assertTrue(results.get(2).score() <= results.get(1).score());
+
+        search.setThreshold(plain.length());
+        results = search.search(cipher);
+        assertEquals("* C VII III QF (AB) (CD)", results.get(0).settingsLine());
+        assertTrue(search.evaluated() < search.candidates());
+    }
+
+    /** English text used to train n-gram scorers. */
+    private static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season of "
+        + "light, it was the season of darkness, it was the spring of hope, "
+        + "it was the winter of despair, we had everything before us, we "
+        + "had nothing before us, we were all going direct to heaven, we "
+        + "were all going direct the other way. In short, the period was "
+        + "so far like the present period, that some of its noisiest "
+        + "authorities insisted on its being received, for good or for "
+        + "evil, in the superlative degree of comparison only. There were "
+        + "a king with a large jaw and a queen with a plain face, on the "
+        + "throne of England; there were a king with a large jaw and a "
+        + "queen with a fair face, on the throne of France.";
+
+    @Test
+    public void checkScorers() throws IOException {
+        NgramScorer trigrams = NgramScorer.train(UPPER, 3, CORPUS);
+        assertEquals(3, trigrams.order());
+        int[] the = { UPPER.toInt('T'), UPPER.toInt('H'), UPPER.toInt('E') };
+        int[] zqx = { UPPER.toInt('Z'), UPPER.toInt('Q'), UPPER.toInt('X') };
+        assertTrue(trigrams.score(the, 3) > trigrams.score(zqx, 3));
+        assertEquals(trigrams.score(the, 3), trigrams.window(the, 0), 0.0);
+        assertEquals(0.0, trigrams.score(the, 2), 0.0);
+
+        NgramScorer read = NgramScorer.read(UPPER, 2, new BufferedReader(
+            new StringReader("TH 30\nHE 10\n\nIN 60\n")));
+        int[] in = { UPPER.toInt('I'), UPPER.toInt('N') };
+        assertEquals(Math.log10(0.6), read.score(in, 2), 1e-6);
+        try {
+            NgramScorer.read(UPPER, 2, new BufferedReader(
+                new StringReader("THE 3\n")));
+            fail("accepted an n-gram of the wrong length");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+
+        CoincidenceScorer coincidence = new CoincidenceScorer(UPPER.size());
+        int[] same = { 0, 0, 0, 0 };
+        int[] distinct = { 0, 1, 2, 3 };
+        assertEquals(1.0, coincidence.score(same, 4), 0.0);
+        assertEquals(0.0, coincidence.score(distinct, 4), 0.0);
+    }
+
+    @Test
+    public void checkPlugboardSolver() {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        Main.setUp(machine, "* B Beta III IV I AXLE (HQ) (EX) (IP)");
+        MachineState start = machine.compile().newSession();
+        String cipher = machine.convert(CORPUS.toUpperCase()
+                                        .replaceAll("[^A-Z]", ""));
+        NgramScorer trigrams = NgramScorer.train(UPPER, 3, CORPUS);
+        PlugboardSolver solver = new PlugboardSolver(start, trigrams);
+        solver.setMaxPairs(3);
+        assertEquals("(EX) (HQ) (IP)", solver.solve(cipher));
+
+        Machine check = new Machine(UPPER, 5, 3, navalRotors());
+        Main.setUp(check, "* B Beta III IV I AXLE (EX) (HQ) (IP)");
+        String plain = check.convert(cipher);
+        int[] text = new int[plain.length()];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = UPPER.toInt(plain.charAt(i));
+        }
+        assertEquals(trigrams.score(text, text.length), solver.score(),
+                     1e-3);
+    }
+
+    @Test
+    public void checkBombe() {
+        Machine machine = new Machine(UPPER, 3, 2, navalRotors());
+        Main.setUp(machine, "* C VII III QF (TQ) (EX) (HR)");
+        String crib = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        String cipher = machine.convert("ATTACKAT" + crib + "DAWN");
+        Bombe bombe = new Bombe(new Machine(UPPER, 3, 2, navalRotors()));
+        List<Bombe.Stop> stops = bombe.run(crib, cipher, 8);
+        assertTrue(stops.size() < bombe.candidates() / 100);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (String.join(" ", stop.rotors()).equals("C VII III")
+                && stop.setting().equals("QF")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        for (String pair : found.pairs().split(" ")) {
+            assertTrue(pair, "(EX) (HR) (QT)".contains(pair));
+        }
+        try {
+            bombe.run(crib, cipher, 20);
+            fail("accepted a crib running past the ciphertext");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkCoreTable() {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        Main.setUp(machine, "* B Beta III IV I AXLE");
+        MachineState start = machine.compile().newSession();
+        String cipher = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        int[] text = new int[cipher.length()];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = UPPER.toInt(cipher.charAt(i));
+        }
+        CoreTable table = new CoreTable(start, text, text.length);
+        assertEquals(text.length, table.length());
+        for (int c = 0; c < UPPER.size(); c += 1) {
+            int last = -1;
+            for (int i = 0; i < table.count(c); i += 1) {
+                assertEquals(c, text[table.position(c, i)]);
+                assertTrue(table.position(c, i) > last);
+                last = table.position(c, i);
+            }
+        }
+        String[] plugboards = { "", "(AB) (CD)", "(HQ) (EX) (IP) (TR) (MZ)" };
+        int[] plain = new int[text.length];
+        for (String plugboard : plugboards) {
+            Permutation perm = new Permutation(plugboard, UPPER);
+            Main.setUp(machine, "* B Beta III IV I AXLE " + plugboard);
+            String expected = machine.convert(cipher);
+            table.convert(perm, plain);
+            for (int i = 0; i < plain.length; i += 1) {
+                assertEquals(msg("checkCoreTable", "plugboard %s at %d",
+                                 plugboard, i),
+                             expected.charAt(i), UPPER.toChar(plain[i]));
+            }
+        }
+    }
+
+    @Test
+    public void checkStateAnalysis() {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        Main.setUp(machine, "* B Beta III IV I AXLE");
+        StateAnalysis analysis = new StateAnalysis(machine.newSession());
+        assertEquals(26 * 25 * 26, analysis.period());
+        assertEquals(0, analysis.transientLength());
+        assertTrue(analysis.graphAnalyzed());
+        assertEquals(26 * 26 * 26, analysis.states());
+        assertEquals(26 * 25 * 26, analysis.cyclicStates());
+        assertEquals(1, analysis.cycles().size());
+        assertEquals(Long.valueOf(1), analysis.cycles().get(26L * 25 * 26));
+        assertEquals("2^13", analysis.cycleType());
+
+        String[] settings = {
+            "* B Beta III IV I AXLE", "* C Gamma VI VII VIII AAAA",
+            "* B Beta I VI II AAEZ", "* C Beta VIII V III ZZZZ",
+            "* B Gamma II I VII AAMQ"
+        };
+        for (String setting : settings) {
+            Main.setUp(machine, setting);
+            MachineState session = machine.newSession();
+            RotorStepper stepper = session.spec().stepper();
+            int[] state = session.settingsArray();
+            HashMap<Long, Long> seen = new HashMap<>();
+            long t = 0;
+            Long first;
+            while ((first = seen.putIfAbsent(stepper.encode(state), t))
+                   == null) {
+                stepper.step(state);
+                t += 1;
+            }
+            analysis = new StateAnalysis(session);
+            assertEquals(msg("checkStateAnalysis", "period of %s", setting),
+                         t - first, analysis.period());
+            assertEquals(msg("checkStateAnalysis", "transient of %s",
+                             setting),
+                         (long) first, analysis.transientLength());
+            long cyclic = 0;
+            for (Map.Entry<Long, Long> entry
+                     : analysis.cycles().entrySet()) {
+                cyclic += entry.getKey() * entry.getValue();
+            }
+            assertEquals(analysis.cyclicStates(), cyclic);
+        }
+    }
+}
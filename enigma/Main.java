@@ -3,12 +3,15 @@ package enigma;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static enigma.EnigmaException.*;
 
@@ -25,35 +28,79 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1. The arguments may be preceded by the option
+     *  --stream, which processes the messages in large buffered chunks
+     *  (see StreamProcessor) rather than line by line, or by --mmap, which
+     *  requires both file arguments and maps them into memory (see
+     *  MappedProcessor). With the option --compile, ARGS[0] and ARGS[1]
+     *  instead name a configuration file and a file to which its compiled
+     *  form (see CompiledConfig) is written. A compiled configuration may
+     *  be given wherever a configuration file is expected. With the option
+     *  --analyze, each settings line of the input is followed in the
+     *  output by an analysis of the rotor states it selects (see
+     *  StateAnalysis), and messages are skipped. When run with
+     *  -Denigma.metrics=true, counters are kept and published as an MBean
+     *  (see Metrics), printed to the standard error when done and, if
+     *  -Denigma.metrics.period=MILLIS is also given, every MILLIS
+     *  milliseconds. */
     public static void main(String... args) {
+        if (Metrics.ENABLED) {
+            Metrics.start(Long.getLong(METRICS_PERIOD, 0), System.err);
+        }
         try {
             new Main(args).process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (Metrics.ENABLED) {
+                System.err.println(Metrics.INSTANCE.dump());
+            }
         }
         System.exit(1);
     }
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        if (args.length > 0 && args[0].startsWith("--")) {
+            _mode = args[0];
+            args = Arrays.copyOfRange(args, 1, args.length);
+            if (!_mode.equals(STREAM) && !_mode.equals(MMAP)
+                && !_mode.equals(COMPILE) && !_mode.equals(ANALYZE)) {
+                throw error("unknown option %s", _mode);
+            }
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
 
-        if (args.length > 1) {
+        if (COMPILE.equals(_mode)) {
+            if (args.length != 2) {
+                throw error("%s requires configuration and output files",
+                            COMPILE);
+            }
+            _compiledName = args[1];
+        } else if (MMAP.equals(_mode)) {
+            if (args.length != 3) {
+                throw error("%s requires input and output files", MMAP);
+            }
+            _inputChannel = getInputChannel(args[1]);
+            _outputChannel = getMappableOutput(args[2]);
+        } else if (STREAM.equals(_mode)) {
+            _inputChannel = args.length > 1 ? getInputChannel(args[1])
+                : Channels.newChannel(System.in);
+            _outputChannel = args.length > 2 ? getOutputChannel(args[2])
+                : Channels.newChannel(System.out);
+        } else if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
             _input = new Scanner(System.in);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+        if (_mode == null || ANALYZE.equals(_mode)) {
+            _output = args.length > 2 ? getOutput(args[2]) : System.out;
         }
     }
 
@@ -75,13 +122,60 @@ public final class Main {
         }
     }
 
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getInputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME. */
+    private WritableByteChannel getOutputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel that can map the file named NAME for writing. */
+    private FileChannel getMappableOutput(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
+     *  file _configName and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
         Machine machine = readConfig();
+        if (COMPILE.equals(_mode)) {
+            CompiledConfig.write(machine, _configName, _compiledName);
+            return;
+        }
+        if (ANALYZE.equals(_mode)) {
+            analyze(machine);
+            return;
+        }
+        if (_mode != null) {
+            processChannels(machine);
+            return;
+        }
         if (_input.hasNextLine()) {
             String setting = _input.nextLine();
+            if (Metrics.ENABLED) {
+                Metrics.bytesIn(setting.length() + 1);
+            }
             if (!setting.contains("*")) {
                 throw error("You must put a setting config in your input!");
             } else {
@@ -90,94 +184,100 @@ public final class Main {
         }
         while (_input.hasNextLine()) {
             String in = _input.nextLine();
+            if (Metrics.ENABLED) {
+                Metrics.bytesIn(in.length() + 1);
+            }
             if (in.startsWith("*")) {
                 setUp(machine, in);
             } else {
                 String decode = machine.convert(in.toUpperCase());
                 decode = printMessageLine(decode);
                 _output.println(decode);
+                if (Metrics.ENABLED) {
+                    Metrics.bytesOut(decode.length()
+                                     + System.lineSeparator().length());
+                }
             }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
-        try {
-            String alpha = _config.nextLine().replaceAll("\\s+", "");
-            if (alpha.contains("-")) {
-                if (alpha.charAt(2) < alpha.charAt(0)) {
-                    throw error("C2 must be greater than or equal to C1!");
-                } else if (alpha.replaceAll("\\s+", "").length() > 3) {
-                    throw error("Configuration file not in the right format!");
-                }
-                _alphabet = new CharacterRange(
-                        alpha.charAt(0), alpha.charAt(2));
-            } else {
-                _alphabet = new SequenceAlphabet(alpha);
-            }
-            ArrayList<String> setting =  new ArrayList<>(
-                    Arrays.asList(_config.nextLine().split("\\s+")));
-            setting.remove("");
-            if (setting.size() != 2) {
-                throw error("Configuration file not in the right format!");
-            }
-            String strConfig = "";
-            while (_config.hasNextLine()) {
-                strConfig += _config.nextLine();
-                strConfig += " ";
-            }
-            if (occurence(strConfig, "(")
-                    != occurence(strConfig, ")")) {
-                throw error("Configuration file not in the right format!");
-            }
-            strConfig = strConfig.replaceAll(" +", " ");
-            ArrayList<String> strRotors = rotorStrings(strConfig);
-            ArrayList<Rotor> rotors = new ArrayList<>();
-            for (int i = 0; i < strRotors.size(); i += 1) {
-                rotors.add(readRotor(strRotors.get(i)));
+    /** Print an analysis of the rotor states selected by each settings
+     *  line of _input for MACHINE to _output. */
+    private void analyze(Machine machine) {
+        while (_input.hasNextLine()) {
+            String in = _input.nextLine();
+            if (in.startsWith("*")) {
+                setUp(machine, in);
+                _output.println(in);
+                new StateAnalysis(machine.newSession()).report(_output);
             }
-            return new Machine(_alphabet, Integer.valueOf(setting.get(0)),
-                    Integer.valueOf(setting.get(1)), rotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
         }
     }
 
-
-    /** Return a rotor, reading its description from _config.
-     * @param str rotor description. */
-    private Rotor readRotor(String str) {
+    /** Apply MACHINE to the messages in _inputChannel, sending the results
+     *  to _outputChannel, with output identical to process(). */
+    private void processChannels(Machine machine) {
         try {
-            String[] line = str.split("\\s+", 3);
-            String name = line[0];
-            String type = line[1];
-            if (name.contains("(") || name.contains(")")) {
-                throw error("Name of rotor must not contain parentheses!");
+            if (MMAP.equals(_mode)) {
+                new MappedProcessor(machine, (FileChannel) _inputChannel,
+                        (FileChannel) _outputChannel).process();
+            } else {
+                new StreamProcessor(machine, _inputChannel, _outputChannel,
+                        Charset.defaultCharset()).process();
+                System.out.flush();
             }
-            Permutation perm = new Permutation(line[2], _alphabet);
-            if (type.contains("M")) {
-                String notches = type.substring(1);
-                if (notches.equals("")) {
-                    throw error("Moving Rotor must have a notch!");
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            try {
+                _inputChannel.close();
+                if (_outputChannel instanceof FileChannel) {
+                    _outputChannel.close();
                 }
-                return new MovingRotor(name, perm, notches);
-            } else if (type.contains("N")) {
-                return new FixedRotor(name, perm);
-            } else if (type.contains("R")) {
-                return new Reflector(name, perm);
-            } else {
-                throw error("Configuration must indicate what type of rotor!");
+            } catch (IOException excp) {
+                throw error("I/O error: %s", excp.getMessage());
             }
+        }
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _configName, which may be a compiled configuration. Only a text
+     *  configuration is opened as a Scanner, and only while it is parsed. */
+    Machine readConfig() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Machine machine;
+        if (CompiledConfig.isCompiled(_configName)) {
+            machine = CompiledConfig.read(_configName);
+        } else {
+            try (Scanner config = getInput(_configName)) {
+                machine = new ConfigParser(config).parse();
+            }
         }
+        if (Metrics.ENABLED) {
+            Metrics.configRead(System.nanoTime() - start);
+        }
+        return machine;
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
+        if (Metrics.ENABLED) {
+            Metrics.settingApplied();
+        }
+        String[] setting = settingFields(M.numRotors(), settings);
+        M.insertRotors(Arrays.copyOf(setting, M.numRotors()));
+        M.setRotors(setting[M.numRotors()]);
+        if (setting.length == M.numRotors() + 2) {
+            M.setPlugboard(PermutationCache.SHARED.get(
+                    setting[M.numRotors() + 1], M.alphabet()));
+        }
+    }
+
+    /** Return the fields of the settings line SETTINGS for a machine with
+     *  NUMROTORS slots: the NUMROTORS rotor names, the rotor settings and,
+     *  if present, the plugboard cycles. */
+    static String[] settingFields(int numRotors, String settings) {
         if (!settings.contains("*")) {
             throw error("There are no settings for the Machine!");
         }
@@ -185,24 +285,13 @@ public final class Main {
         while (str.startsWith(" ")) {
             str = str.substring(1);
         }
-        ArrayList<String> setting = new ArrayList<>(
-                Arrays.asList(str.split("(\\s+)", M.numRotors() + 2)));
-        if (setting.size() < M.numRotors() + 1) {
+        String[] setting = str.split("(\\s+)", numRotors + 2);
+        if (setting.length < numRotors + 1) {
             throw error("Setting line contains wrong number of arguments!");
         }
-        String[] rotors = new String[M.numRotors()];
-        for (int i = 0; i < M.numRotors(); i += 1) {
-            rotors[i] = setting.get(i);
-        }
-        M.insertRotors(rotors);
-        M.setRotors(setting.get(M.numRotors()));
-        if (setting.size() == M.numRotors() + 2) {
-            M.setPlugboard(new Permutation(
-                    setting.get(M.numRotors() + 1), _alphabet));
-        }
+        return setting;
     }
 
-
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters).
      *  @return the message in groups of five. */
@@ -210,44 +299,40 @@ public final class Main {
         return msg.replaceAll(".....", "$0 ");
     }
 
-    /** Returns ArrayList of strings where the
-     * strings are the rotor information. @param strRotors */
-    private ArrayList<String> rotorStrings(String strRotors) {
-        ArrayList<String> result = new ArrayList<>();
-        String regex = "[a-zA-Z0-9]+ +[a-zA-Z0-9]+ +( *\\([a-zA-Z0-9]+\\))+";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(strRotors);
-        while (matcher.find()) {
-            String str = matcher.group();
-            result.add(str);
-            strRotors = strRotors.substring(str.length());
-        }
-        return result;
-    }
-
-    /** Returns how many times a character occurs in a string.
-     * @param str The string you are checking.
-     * @param occur Should be a character */
-    private int occurence(String str, String occur) {
-        int occurrences = 0;
-        for (char c: str.toCharArray()) {
-            if (occur.equals(String.valueOf(c))) {
-                occurrences += 1;
-            }
-        }
-        return occurrences;
-    }
-
-
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
-
     /** Source of input messages. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the configuration file. */
+    private String _configName;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** The option selecting streaming mode. */
+    static final String STREAM = "--stream";
+
+    /** The option selecting memory-mapped mode. */
+    static final String MMAP = "--mmap";
+
+    /** The system property giving the period of metrics dumps. */
+    static final String METRICS_PERIOD = "enigma.metrics.period";
+
+    /** The option selecting compilation of the configuration. */
+    static final String COMPILE = "--compile";
+
+    /** The option selecting analysis of rotor states. */
+    static final String ANALYZE = "--analyze";
+
+    /** Name of the file to which a compiled configuration is written. */
+    private String _compiledName;
+
+    /** The option given before the file arguments, if any. */
+    private String _mode;
+
+    /** Source of input messages in streaming and mapped modes. */
+    private ReadableByteChannel _inputChannel;
+
+    /** Destination of encoded/decoded messages in streaming and mapped
+     *  modes. */
+    private WritableByteChannel _outputChannel;
 }
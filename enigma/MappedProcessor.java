@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a Machine to a file of settings lines and messages by mapping
+ *  the input and output files into memory, so that files far larger than
+ *  the heap can be processed. Message bytes are translated to alphabet
+ *  indices and back through ASCII lookup tables, and no Strings are made
+ *  except for settings lines, which are honored mid-stream exactly as by
+ *  Main. The alphabet and all message characters must be ASCII.
+ *  @author agent
+ */
+class MappedProcessor {
+
+    /** Largest number of bytes mapped at once from either file. */
+    static final long WINDOW = 1L << 26;
+
+    /** A processor that applies MACHINE to the contents of INPUT, writing
+     *  the results to OUTPUT, which must be open for reading and
+     *  writing. */
+    MappedProcessor(Machine machine, FileChannel input, FileChannel output) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        Alphabet alphabet = machine.alphabet();
+        _index = new int[ASCII];
+        for (int b = 0; b < ASCII; b += 1) {
+            char ch = Character.toUpperCase((char) b);
+            _index[b] = alphabet.contains(ch) ? alphabet.toInt(ch) : -1;
+        }
+        _chars = new byte[alphabet.size()];
+        for (int i = 0; i < _chars.length; i += 1) {
+            char ch = alphabet.toChar(i);
+            if (ch >= ASCII) {
+                throw error("mapped mode requires an ASCII alphabet");
+            }
+            _chars[i] = (byte) ch;
+        }
+        _separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Process all of my input. As in Main, the first line must be a
+     *  settings line, and later lines starting with '*' change the
+     *  settings. If a line is in error, the output for the preceding
+     *  lines is kept. */
+    void process() throws IOException {
+        try {
+            long size = _input.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                MappedByteBuffer in = _input.map(FileChannel.MapMode.READ_ONLY,
+                        pos, Math.min(WINDOW, size - pos));
+                while (in.hasRemaining()) {
+                    accept(in.get());
+                }
+            }
+            if (_kind != START) {
+                endLine();
+            }
+        } catch (EnigmaException excp) {
+            _output.truncate(_committed);
+            throw excp;
+        }
+        _output.truncate(_committed);
+        if (Metrics.ENABLED) {
+            Metrics.bytesIn(_input.size());
+            Metrics.bytesOut(_committed);
+        }
+    }
+
+    /** Consume the input byte B. */
+    private void accept(byte b) throws IOException {
+        if (_afterReturn) {
+            _afterReturn = false;
+            if (b == '\n') {
+                return;
+            }
+        }
+        if (b == '\n' || b == '\r') {
+            endLine();
+            _afterReturn = b == '\r';
+            return;
+        }
+        if (_kind == START) {
+            _kind = _firstLine || b == '*' ? SETTING : MESSAGE;
+        }
+        if (_kind == SETTING) {
+            _setting.append((char) (b & 0xff));
+        } else if (b < 0) {
+            throw error("mapped mode requires ASCII input");
+        } else if (_index[b] >= 0) {
+            write(_chars[_machine.convert(_index[b])]);
+            _group += 1;
+            if (_group == 5) {
+                write((byte) ' ');
+                _group = 0;
+            }
+        } else if (!Machine.isWhitespace((char) b)) {
+            throw error("%c is not in the alphabet", (char) b);
+        }
+    }
+
+    /** Finish the current line. */
+    private void endLine() throws IOException {
+        if (_kind == SETTING || _firstLine) {
+            String line = _setting.toString();
+            if (_firstLine && !line.contains("*")) {
+                throw error("You must put a setting config in your input!");
+            }
+            Main.setUp(_machine, line);
+            _setting.setLength(0);
+            _firstLine = false;
+        } else {
+            for (byte b : _separator) {
+                write(b);
+            }
+            _committed = _written;
+        }
+        _kind = START;
+        _group = 0;
+    }
+
+    /** Write B at the end of the output, mapping a new window of the output
+     *  file when the current one is full. */
+    private void write(byte b) throws IOException {
+        if (_out == null || !_out.hasRemaining()) {
+            _out = _output.map(FileChannel.MapMode.READ_WRITE,
+                    _written, WINDOW);
+        }
+        _out.put(b);
+        _written += 1;
+    }
+
+    /** Number of ASCII characters. */
+    private static final int ASCII = 128;
+
+    /** Kinds of line: not yet known, settings, and message. */
+    private static final int START = 0, SETTING = 1, MESSAGE = 2;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** The mapped input file. */
+    private final FileChannel _input;
+
+    /** The mapped output file. */
+    private final FileChannel _output;
+
+    /** Alphabet index of the upper-case form of each ASCII byte, or -1. */
+    private final int[] _index;
+
+    /** The ASCII byte for each alphabet index. */
+    private final byte[] _chars;
+
+    /** Line terminator written after each message line. */
+    private final byte[] _separator;
+
+    /** The current output window. */
+    private MappedByteBuffer _out;
+
+    /** Number of bytes written to the output file. */
+    private long _written;
+
+    /** Length of the prefix of the output file holding complete lines. */
+    private long _committed;
+
+    /** The settings line read so far. */
+    private final StringBuilder _setting = new StringBuilder();
+
+    /** The kind of the current line. */
+    private int _kind = START;
+
+    /** True until the first line has been read. */
+    private boolean _firstLine = true;
+
+    /** True iff the last byte was '\r'. */
+    private boolean _afterReturn;
+
+    /** Number of characters in the current output group. */
+    private int _group;
+
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counters of what the simulator is doing, exposed as the MBean
+ *  enigma:type=Metrics and as a periodic text dump. Counting is enabled
+ *  by running with -Denigma.metrics=true. Since ENABLED is a constant,
+ *  the JIT removes the guarded calls on the hot paths entirely when it
+ *  is false, and the counters themselves are allocated only once.
+ *  @author agent
+ */
+public final class Metrics implements MetricsMBean {
+
+    /** True iff counting is enabled. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** The name under which the MBean is registered. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** The single instance. */
+    static final Metrics INSTANCE = new Metrics();
+
+    /** Metrics are accessed through INSTANCE. */
+    private Metrics() {
+    }
+
+    /** Register INSTANCE with the platform MBean server, if that has not
+     *  been done already, and, if PERIOD is positive, print dump() to OUT
+     *  every PERIOD milliseconds on a daemon thread. */
+    static synchronized void start(long period, PrintStream out) {
+        if (!_registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, new ObjectName(NAME));
+                _registered = true;
+            } catch (JMException excp) {
+                out.printf("enigma metrics: could not register %s: %s%n",
+                           NAME, excp.getMessage());
+            }
+        }
+        if (period > 0 && _dumper == null) {
+            _dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "enigma-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            _dumper.scheduleAtFixedRate(() -> out.println(INSTANCE.dump()),
+                                        period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Record that a character was converted. */
+    static void charConverted() {
+        CHARS.increment();
+    }
+
+    /** Record that N characters were converted. */
+    static void charsConverted(long n) {
+        CHARS.add(n);
+    }
+
+    /** Record that a settings line was applied. */
+    static void settingApplied() {
+        SETTINGS.increment();
+    }
+
+    /** Record that a rotor advanced one position. */
+    static void rotorStep() {
+        STEPS.increment();
+    }
+
+    /** Record that a rotor advanced only because of its own notch. */
+    static void doubleStep() {
+        DOUBLE_STEPS.increment();
+    }
+
+    /** Record that reading a configuration took NANOS nanoseconds. */
+    static void configRead(long nanos) {
+        CONFIG_NANOS.add(nanos);
+    }
+
+    /** Record that N bytes of input were processed. */
+    static void bytesIn(long n) {
+        BYTES_IN.add(n);
+    }
+
+    /** Record that N bytes of output were produced. */
+    static void bytesOut(long n) {
+        BYTES_OUT.add(n);
+    }
+
+    @Override
+    public long getCharsConverted() {
+        return CHARS.sum();
+    }
+
+    @Override
+    public long getSettingsApplied() {
+        return SETTINGS.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return STEPS.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return DOUBLE_STEPS.sum();
+    }
+
+    @Override
+    public long getPermutationCacheHits() {
+        return PermutationCache.SHARED.hits();
+    }
+
+    @Override
+    public long getPermutationCacheMisses() {
+        return PermutationCache.SHARED.misses();
+    }
+
+    @Override
+    public long getConfigNanos() {
+        return CONFIG_NANOS.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return BYTES_IN.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return BYTES_OUT.sum();
+    }
+
+    @Override
+    public String dump() {
+        return String.format("enigma metrics: chars=%d settings=%d steps=%d"
+                             + " doubleSteps=%d permCacheHits=%d"
+                             + " permCacheMisses=%d configMillis=%.3f"
+                             + " bytesIn=%d bytesOut=%d",
+                             getCharsConverted(), getSettingsApplied(),
+                             getRotorSteps(), getDoubleSteps(),
+                             getPermutationCacheHits(),
+                             getPermutationCacheMisses(),
+                             getConfigNanos() / 1e6, getBytesIn(),
+                             getBytesOut());
+    }
+
+    /** The counters. */
+    private static final LongAdder CHARS = new LongAdder(),
+        SETTINGS = new LongAdder(), STEPS = new LongAdder(),
+        DOUBLE_STEPS = new LongAdder(), CONFIG_NANOS = new LongAdder(),
+        BYTES_IN = new LongAdder(), BYTES_OUT = new LongAdder();
+
+    /** True iff INSTANCE has been registered. */
+    private static boolean _registered;
+
+    /** The executor printing periodic dumps, or null. */
+    private static ScheduledExecutorService _dumper;
+
+}
@@ -0,0 +1,47 @@
+package enigma;
+
+/** The management interface of Metrics, through which JMX clients read
+ *  the simulator's counters.
+ *  @author agent
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted by Machines, their
+     *  sessions and the engines built on them. */
+    long getCharsConverted();
+
+    /** Return the number of settings lines applied by Main. */
+    long getSettingsApplied();
+
+    /** Return the number of single-position rotor advances made by
+     *  Machines. */
+    long getRotorSteps();
+
+    /** Return the number of advances of non-rightmost rotors caused only
+     *  by their own notches (double steps). */
+    long getDoubleSteps();
+
+    /** Return the number of permutations found in the shared
+     *  PermutationCache. */
+    long getPermutationCacheHits();
+
+    /** Return the number of permutations compiled by the shared
+     *  PermutationCache. */
+    long getPermutationCacheMisses();
+
+    /** Return the total time spent reading configurations, in
+     *  nanoseconds. */
+    long getConfigNanos();
+
+    /** Return the number of input bytes (characters, when reading line by
+     *  line) processed by Main. */
+    long getBytesIn();
+
+    /** Return the number of output bytes (characters, when writing line by
+     *  line) produced by Main. */
+    long getBytesOut();
+
+    /** Return all counters as one line of text. */
+    String dump();
+
+}
@@ -17,6 +17,10 @@ class MovingRotor extends Rotor {
             throw error("Moving Rotor needs to have notches!");
         }
         _notches = notches;
+        _notchTable = new boolean[size()];
+        for (int i = 0; i < size(); i += 1) {
+            _notchTable[i] = notches.indexOf(alphabet().toChar(i)) >= 0;
+        }
     }
 
     @Override
@@ -31,13 +35,22 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        char setting = permutation().alphabet().toChar(setting());
-        if (_notches.contains(String.valueOf(setting))) {
-            return true;
-        }
-        return false;
+        return _notchTable[setting()];
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        return _notchTable[posn];
+    }
+
+    /** Return the notches I was given, as a string of characters. */
+    String notches() {
+        return _notches;
     }
 
     /** notches for the rotor. */
     private String _notches;
+
+    /** Whether each setting of the rotor is a notch position. */
+    private boolean[] _notchTable;
 }
@@ -89,6 +89,24 @@ public class MovingRotorTest {
         assertTrue(rotor1.atNotch());
     }
 
+    @Test
+    public void checkPrecomputed() {
+        setRotor("VI", NAVALA, "ZM");
+        Rotor plain = new MovingRotor("VI",
+                new Permutation(NAVALA.get("VI"), UPPER), "ZM");
+        rotor.precompute();
+        assertTrue(rotor.precomputed());
+        for (int s = 0; s < UPPER.size(); s += 1) {
+            rotor.set(s);
+            plain.set(s);
+            for (int p = 0; p < UPPER.size(); p += 1) {
+                assertEquals(plain.convertForward(p), rotor.convertForward(p));
+                assertEquals(plain.convertBackward(p),
+                        rotor.convertBackward(p));
+            }
+        }
+    }
+
     @Test
     public void checkFixedRotor() {
         Permutation q = new Permutation(
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import static enigma.EnigmaException.*;
+
+/** A Scorer that sums the log10 probabilities of the n-grams (of one
+ *  length from 1 to 4) of a text. Probabilities are kept in a flat table
+ *  indexed by the n-gram's alphabet indices read as a number in base
+ *  alphabet size, so that scoring a text of alphabet indices is one table
+ *  read per position. N-grams never seen in training get a floor
+ *  probability.
+ *  @author agent
+ */
+class NgramScorer implements Scorer {
+
+    /** Largest n-gram length supported. */
+    static final int MAX_ORDER = 4;
+
+    /** Return a scorer of N-grams over ALPHABET whose probabilities are
+     *  the frequencies of N-grams in CORPUS. Characters of CORPUS are
+     *  upper-cased, and n-grams containing characters not in ALPHABET are
+     *  skipped. */
+    static NgramScorer train(Alphabet alphabet, int n, String corpus) {
+        NgramScorer scorer = new NgramScorer(alphabet, n);
+        int run = 0;
+        int index = 0;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            char ch = Character.toUpperCase(corpus.charAt(i));
+            if (!alphabet.contains(ch)) {
+                run = 0;
+                continue;
+            }
+            index = index % scorer._prefixes * scorer._size
+                + alphabet.toInt(ch);
+            run += 1;
+            if (run >= n) {
+                scorer._counts[index] += 1;
+            }
+        }
+        scorer.finish();
+        return scorer;
+    }
+
+    /** Return a scorer of N-grams over ALPHABET whose counts are read
+     *  from IN, one "NGRAM COUNT" pair per line, with N-grams of length
+     *  N. */
+    static NgramScorer read(Alphabet alphabet, int n, BufferedReader in)
+        throws IOException {
+        NgramScorer scorer = new NgramScorer(alphabet, n);
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {
+                continue;
+            }
+            if (fields.length != 2 || fields[0].length() != n) {
+                throw error("bad n-gram count: %s", line);
+            }
+            int index = 0;
+            for (int i = 0; i < n; i += 1) {
+                char ch = Character.toUpperCase(fields[0].charAt(i));
+                if (!alphabet.contains(ch)) {
+                    throw error("bad n-gram count: %s", line);
+                }
+                index = index * scorer._size + alphabet.toInt(ch);
+            }
+            try {
+                scorer._counts[index] += Long.parseLong(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", line);
+            }
+        }
+        scorer.finish();
+        return scorer;
+    }
+
+    /** An untrained scorer of N-grams over ALPHABET. */
+    private NgramScorer(Alphabet alphabet, int n) {
+        if (n < 1 || n > MAX_ORDER) {
+            throw error("n-grams must have length 1 to %d", MAX_ORDER);
+        }
+        _size = alphabet.size();
+        _order = n;
+        long span = 1;
+        for (int i = 0; i < n; i += 1) {
+            span *= _size;
+        }
+        if (span > Integer.MAX_VALUE) {
+            throw error("alphabet too large for %d-grams", n);
+        }
+        _span = (int) span;
+        _prefixes = _span / _size;
+        _counts = new long[_span];
+    }
+
+    /** Return the length of my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        double score = 0;
+        int index = 0;
+        for (int i = 0; i < len; i += 1) {
+            index = index % _prefixes * _size + text[i];
+            if (i >= _order - 1) {
+                score += _logs[index];
+            }
+        }
+        return score;
+    }
+
+    /** Return the log10 probability of the n-gram of TEXT starting at
+     *  START. */
+    double window(int[] text, int start) {
+        int index = 0;
+        for (int i = start; i < start + _order; i += 1) {
+            index = index * _size + text[i];
+        }
+        return _logs[index];
+    }
+
+    /** Convert _counts to log probabilities in _logs. */
+    private void finish() {
+        long total = 0;
+        for (long count : _counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams to train on");
+        }
+        _logs = new float[_span];
+        float floor = (float) Math.log10(FLOOR / total);
+        for (int i = 0; i < _span; i += 1) {
+            _logs[i] = _counts[i] == 0 ? floor
+                : (float) Math.log10((double) _counts[i] / total);
+        }
+        _counts = null;
+    }
+
+    /** Count assumed for n-grams never seen in training. */
+    private static final double FLOOR = 0.01;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The length of my n-grams. */
+    private final int _order;
+
+    /** The number of possible n-grams. */
+    private final int _span;
+
+    /** The number of possible (n-1)-grams. The index of the n-gram ending
+     *  at the next character is found by dropping the first character of
+     *  the last index modulo _prefixes, so that it never exceeds
+     *  _span. */
+    private final int _prefixes;
+
+    /** The count of each n-gram, while training. */
+    private long[] _counts;
+
+    /** The log10 probability of each n-gram. */
+    private float[] _logs;
+
+}
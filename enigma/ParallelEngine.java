@@ -0,0 +1,123 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long messages with a Machine on all available cores. The
+ *  conversion of each character depends only on the rotor settings at its
+ *  position, which can be computed directly by seeking, so the message is
+ *  split into chunks, each converted by its own session of the compiled
+ *  machine positioned at the start of its chunk. A machine that uses the
+ *  same rotor in more than one slot cannot be compiled, and converts
+ *  serially.
+ *  @author agent
+ */
+class ParallelEngine {
+
+    /** Default number of characters converted by one task. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** An engine that converts with MACHINE on the common fork/join
+     *  pool. */
+    ParallelEngine(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** An engine that converts with MACHINE on POOL, giving each task at
+     *  most CHUNK characters. */
+    ParallelEngine(Machine machine, ForkJoinPool pool, int chunk) {
+        _machine = machine;
+        _pool = pool;
+        _chunk = Math.max(1, chunk);
+    }
+
+    /** Returns the encoding/decoding of MSG, exactly as my machine's
+     *  convert(MSG) would, leaving the machine in the same state. */
+    String convert(String msg) {
+        Alphabet alphabet = _machine.alphabet();
+        int[] indices = new int[msg.length()];
+        int len = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                indices[len] = alphabet.toInt(Character.toUpperCase(ch));
+                len += 1;
+            }
+        }
+        convert(indices, 0, len, indices, 0);
+        char[] result = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = alphabet.toChar(indices[i]);
+        }
+        return new String(result);
+    }
+
+    /** Converts the LEN alphabet indices of IN starting at OFF into OUT
+     *  starting at OUTOFF, exactly as my machine's convert would, leaving
+     *  the machine in the same state. IN and OUT may be the same array
+     *  only if OFF == OUTOFF. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        if (_machine.repeatsRotors()) {
+            _machine.convert(in, off, len, out, outOff);
+            return;
+        }
+        _pool.invoke(new Chunk(_machine.compile(), in, off, out, outOff,
+                               0, len));
+        _machine.seek(len);
+    }
+
+    /** A task converting part of a message. */
+    private class Chunk extends RecursiveAction {
+
+        /** Converts positions LO to HI - 1 of the message of IN starting
+         *  at OFF into OUT starting at OUTOFF, using sessions of SPEC. */
+        Chunk(MachineSpec spec, int[] in, int off, int[] out, int outOff,
+              int lo, int hi) {
+            _spec = spec;
+            _in = in;
+            _off = off;
+            _out = out;
+            _outOff = outOff;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= _chunk) {
+                MachineState session = _spec.newSession();
+                session.seek(_lo);
+                session.convert(_in, _off + _lo, _hi - _lo,
+                        _out, _outOff + _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Chunk(_spec, _in, _off, _out, _outOff,
+                                    _lo, mid),
+                          new Chunk(_spec, _in, _off, _out, _outOff,
+                                    mid, _hi));
+            }
+        }
+
+        /** The compiled machine at the start of the message. */
+        private final MachineSpec _spec;
+
+        /** Source and destination of the message. */
+        private final int[] _in, _out;
+
+        /** Offsets of the message in _in and _out. */
+        private final int _off, _outOff;
+
+        /** The range of message positions I convert. */
+        private final int _lo, _hi;
+    }
+
+    /** The machine whose state is the start of each message. */
+    private final Machine _machine;
+
+    /** The pool running my tasks. */
+    private final ForkJoinPool _pool;
+
+    /** Largest number of characters converted by one task. */
+    private final int _chunk;
+
+}
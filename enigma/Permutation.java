@@ -30,6 +30,46 @@ class Permutation {
             addCycle(cy);
         }
         _cycles.remove("");
+        compile();
+    }
+
+    /** A permutation of ALPHABET that maps each index I to TABLE[I].
+     *  TABLE must have an entry for each character of ALPHABET, and no
+     *  two entries may be equal. */
+    Permutation(int[] table, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (table.length != alphabet.size()) {
+            throw error("Permutation table does not match the alphabet!");
+        }
+        _forward = table.clone();
+        _inverse = new int[table.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < table.length; i += 1) {
+            int to = table[i];
+            if (to < 0 || to >= table.length || _inverse[to] >= 0) {
+                throw error("Permutation table is not a permutation!");
+            }
+            _inverse[to] = i;
+        }
+    }
+
+    /** Compiles _cycles into the dense _forward and _inverse tables, so
+     *  that permute and invert are single array lookups. */
+    private void compile() {
+        _forward = new int[alphabet().size()];
+        _inverse = new int[alphabet().size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        for (String cy : _cycles) {
+            for (int i = 0; i < cy.length(); i += 1) {
+                int from = alphabet().toInt(cy.charAt(i));
+                int to = alphabet().toInt(cy.charAt((i + 1) % cy.length()));
+                _forward[from] = to;
+                _inverse[to] = from;
+            }
+        }
     }
 
 
@@ -60,35 +100,19 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return alphabet().size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char bfPerm = alphabet().toChar(wrap(p));
-        if (inCycle(bfPerm)) {
-            String cycle = findCycle(bfPerm);
-            char permuted = cycle.charAt((
-                    cycle.indexOf(bfPerm) + 1) % cycle.length());
-            return alphabet().toInt(permuted);
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char bfInvert = alphabet().toChar(wrap(c));
-        if (inCycle(bfInvert)) {
-            String cycle = findCycle(bfInvert);
-            int inverted = cycle.indexOf(bfInvert) - 1;
-            if (inverted == -1) {
-                inverted += cycle.length();
-            }
-            return alphabet().toInt(cycle.charAt(inverted));
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -120,36 +144,14 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int count = 0; count < size(); count += 1) {
-            if (permute(alphabet().toChar(count)) == alphabet().toChar(count)) {
+        for (int count = 0; count < _forward.length; count += 1) {
+            if (_forward[count] == count) {
                 return false;
             }
         }
         return true;
     }
 
-    /** returns boolean of whether or not c is in _cycles.
-     * @param c character you're checking. */
-    private boolean inCycle(char c) {
-        for (String cy: _cycles) {
-            if (cy.contains(String.valueOf(c))) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /** Returns the cycle where character is in _cycles.
-     * @param c character you're checking. */
-    private String findCycle(char c) {
-        for (String cy :_cycles) {
-            if (cy.contains(String.valueOf(c))) {
-                return cy;
-            }
-        }
-        return "";
-    }
-
     /** Checks if a character occurs once in a string.
      * @param string character you're checking. */
     private static void occurOnce(String string) {
@@ -181,4 +183,11 @@ class Permutation {
     /** Permutation cycles. */
     private ArrayList<String> _cycles;
 
+    /** Index of the image of each alphabet index under this permutation. */
+    private int[] _forward;
+
+    /** Index of the preimage of each alphabet index under this
+     *  permutation. */
+    private int[] _inverse;
+
 }
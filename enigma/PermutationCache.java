@@ -0,0 +1,117 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of compiled Permutations, keyed by
+ *  alphabet and by cycle string with whitespace removed, so that settings
+ *  lines and rotor descriptions that repeat the same cycles do not parse
+ *  and validate them again. Permutations are immutable, so a cached one
+ *  may be shared freely. Safe for use by several threads.
+ *  @author agent
+ */
+class PermutationCache {
+
+    /** Default maximum number of cached permutations. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** The cache shared by Main and BatchProcessor. */
+    static final PermutationCache SHARED =
+        new PermutationCache(DEFAULT_CAPACITY);
+
+    /** A cache holding at most CAPACITY permutations. */
+    PermutationCache(int capacity) {
+        _cache = new LinkedHashMap<Key, Permutation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Key, Permutation> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Return the permutation of ALPHABET given by CYCLES, as for new
+     *  Permutation(CYCLES, ALPHABET), reusing a cached one if possible. */
+    Permutation get(String cycles, Alphabet alphabet) {
+        Key key = new Key(normalize(cycles), alphabet);
+        synchronized (this) {
+            Permutation perm = _cache.get(key);
+            if (perm != null) {
+                _hits += 1;
+                return perm;
+            }
+            _misses += 1;
+        }
+        Permutation perm = new Permutation(cycles, alphabet);
+        synchronized (this) {
+            _cache.put(key, perm);
+        }
+        return perm;
+    }
+
+    /** Return the number of calls to get answered from the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that compiled a permutation. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of cached permutations. */
+    synchronized int size() {
+        return _cache.size();
+    }
+
+    /** Return CYCLES without whitespace. */
+    private static String normalize(String cycles) {
+        StringBuilder result = new StringBuilder(cycles.length());
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char ch = cycles.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** A normalized cycle string and the alphabet it is over. */
+    private static final class Key {
+
+        /** The key for CYCLES over ALPHABET. */
+        Key(String cycles, Alphabet alphabet) {
+            _cycles = cycles;
+            _alphabet = alphabet;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _alphabet == other._alphabet
+                && _cycles.equals(other._cycles);
+        }
+
+        @Override
+        public int hashCode() {
+            return _cycles.hashCode() * 31
+                + System.identityHashCode(_alphabet);
+        }
+
+        /** The normalized cycles. */
+        private final String _cycles;
+
+        /** The alphabet of the permutation. */
+        private final Alphabet _alphabet;
+    }
+
+    /** Cached permutations, least recently used first. */
+    private final LinkedHashMap<Key, Permutation> _cache;
+
+    /** Numbers of calls to get that did and did not hit the cache. */
+    private long _hits, _misses;
+
+}
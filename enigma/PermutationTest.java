@@ -115,4 +115,19 @@ public class PermutationTest {
         assertEquals('M', p.invert('N'));
         assertEquals('D', p.invert('A'));
     }
+
+    @Test
+    public void checkCache() {
+        PermutationCache cache = new PermutationCache(2);
+        Permutation p = cache.get("(AB) (CD)", UPPER);
+        assertTrue(p == cache.get("(AB)(CD)", UPPER));
+        assertEquals(1, cache.hits());
+        assertEquals('B', p.permute('A'));
+        Alphabet other = new CharacterRange('A', 'Z');
+        assertTrue(p != cache.get("(AB)(CD)", other));
+        cache.get("(EF)", UPPER);
+        assertEquals(2, cache.size());
+        assertTrue(p != cache.get("(AB)(CD)", UPPER));
+        assertEquals(4, cache.misses());
+    }
 }
@@ -0,0 +1,357 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A hill-climbing search for the plugboard of a ciphertext whose rotor
+ *  order and starting settings are known. Starting from an empty
+ *  plugboard, it repeatedly tries connecting or disconnecting each pair
+ *  of characters, keeping any change that raises the n-gram score of the
+ *  decryption, until no single change helps.
+ *
+ *  The rotors are run once, to build a CoreTable of the ciphertext. A
+ *  change of the plugboard alters only the positions whose ciphertext
+ *  character, or whose character leaving the core, was rewired. The
+ *  table indexes the first kind and the solver keeps buckets of the
+ *  second, so a trial visits only those positions, each with two table
+ *  lookups, and rescores only the n-grams covering them.
+ *  @author agent
+ */
+class PlugboardSolver {
+
+    /** Default largest number of connected pairs. */
+    static final int DEFAULT_MAX_PAIRS = 10;
+
+    /** A solver for ciphertexts enciphered starting from the rotor order
+     *  and settings of START, whose own plugboard is ignored, rating
+     *  decryptions with SCORER. */
+    PlugboardSolver(MachineState start, NgramScorer scorer) {
+        _start = start.copy();
+        _scorer = scorer;
+        _size = start.spec().size();
+        _order = scorer.order();
+    }
+
+    /** Connect at most MAXPAIRS pairs of characters. */
+    void setMaxPairs(int maxPairs) {
+        if (maxPairs < 0 || maxPairs > _size / 2) {
+            throw error("bad number of plugboard pairs: %d", maxPairs);
+        }
+        _maxPairs = maxPairs;
+    }
+
+    /** Return the score of the decryption under the plugboard found by
+     *  the last solve. */
+    double score() {
+        return _score;
+    }
+
+    /** Return the plugboard found for CIPHERTEXT, as cycles for
+     *  Machine.setPlugboard, where whitespace is dropped and letters are
+     *  upper-cased as for Machine.convert. */
+    String solve(String ciphertext) {
+        Alphabet alphabet = _start.spec().alphabet();
+        int[] text = new int[ciphertext.length()];
+        int len = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = ciphertext.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                text[len] = alphabet.toInt(Character.toUpperCase(ch));
+                len += 1;
+            }
+        }
+        int[] plug = solve(text, len);
+        StringBuilder cycles = new StringBuilder();
+        for (int a = 0; a < _size; a += 1) {
+            if (plug[a] > a) {
+                if (cycles.length() > 0) {
+                    cycles.append(' ');
+                }
+                cycles.append('(').append(alphabet.toChar(a))
+                    .append(alphabet.toChar(plug[a])).append(')');
+            }
+        }
+        return cycles.toString();
+    }
+
+    /** Return the plugboard found for the first LEN alphabet indices of
+     *  TEXT, as the image of each character. */
+    int[] solve(int[] text, int len) {
+        setUp(text, len);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    if (trySwap(a, b)) {
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return _plug.clone();
+    }
+
+    /** Build the core table of the first LEN positions of TEXT and
+     *  decrypt and score it with an empty plugboard. */
+    private void setUp(int[] text, int len) {
+        _table = new CoreTable(_start, text, len);
+        _len = len;
+        _plug = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plug[c] = c;
+        }
+        _pairs = 0;
+        _middle = new int[len];
+        _plain = new int[len];
+        _buckets = new int[_size][INITIAL_BUCKET];
+        _bucketSize = new int[_size];
+        _slot = new int[len];
+        for (int t = 0; t < len; t += 1) {
+            _middle[t] = _table.core(t, text[t]);
+            _plain[t] = _middle[t];
+            addToBucket(t);
+        }
+        _score = _scorer.score(_plain, len);
+        _changed = new int[len];
+        _oldMiddle = new int[len];
+        _oldPlain = new int[len];
+        _positionMarks = new int[len];
+        _windowMarks = new int[len];
+        _windows = new int[len];
+        _trial = 0;
+        _rewired = new boolean[_size];
+    }
+
+    /** Connect A and B, or disconnect them if they are connected to each
+     *  other, first disconnecting any other partners. Keep the change and
+     *  return true if it raises the score; otherwise undo it. */
+    private boolean trySwap(int a, int b) {
+        int p = _plug[a], q = _plug[b];
+        int pairs;
+        if (p == b) {
+            pairs = _pairs - 1;
+        } else {
+            pairs = _pairs + 1 - (p != a ? 1 : 0) - (q != b ? 1 : 0);
+            if (pairs > _maxPairs) {
+                return false;
+            }
+        }
+        _plug[p] = p;
+        _plug[q] = q;
+        if (p != b) {
+            _plug[a] = b;
+            _plug[b] = a;
+        }
+        _numLetters = 0;
+        rewire(a);
+        rewire(b);
+        rewire(p);
+        rewire(q);
+        double delta = rescore();
+        for (int i = 0; i < _numLetters; i += 1) {
+            _rewired[_letters[i]] = false;
+        }
+        if (delta > EPSILON) {
+            _score += delta;
+            _pairs = pairs;
+            for (int i = 0; i < _numChanged; i += 1) {
+                int t = _changed[i];
+                if (_middle[t] != _oldMiddle[t]) {
+                    removeFromBucket(t, _oldMiddle[t]);
+                    addToBucket(t);
+                }
+            }
+            return true;
+        }
+        for (int i = 0; i < _numChanged; i += 1) {
+            int t = _changed[i];
+            _middle[t] = _oldMiddle[t];
+            _plain[t] = _oldPlain[t];
+        }
+        _plug[p] = a;
+        _plug[q] = b;
+        _plug[a] = p;
+        _plug[b] = q;
+        return false;
+    }
+
+    /** Mark C as rewired by the current trial. */
+    private void rewire(int c) {
+        if (!_rewired[c]) {
+            _rewired[c] = true;
+            _letters[_numLetters] = c;
+            _numLetters += 1;
+        }
+    }
+
+    /** Update the decryption for the current plugboard at the positions
+     *  affected by the characters in _letters, recording them and their
+     *  old values in _changed, _oldMiddle and _oldPlain. Return the
+     *  resulting change in score. */
+    private double rescore() {
+        _trial += 1;
+        _numChanged = 0;
+        for (int i = 0; i < _numLetters; i += 1) {
+            int c = _letters[i];
+            for (int j = _table.count(c) - 1; j >= 0; j -= 1) {
+                change(_table.position(c, j));
+            }
+            for (int j = _bucketSize[c] - 1; j >= 0; j -= 1) {
+                change(_buckets[c][j]);
+            }
+        }
+        _numWindows = 0;
+        for (int i = 0; i < _numChanged; i += 1) {
+            int t = _changed[i];
+            int from = Math.max(0, t - _order + 1);
+            int to = Math.min(t, _len - _order);
+            for (int s = from; s <= to; s += 1) {
+                if (_windowMarks[s] != _trial) {
+                    _windowMarks[s] = _trial;
+                    _windows[_numWindows] = s;
+                    _numWindows += 1;
+                }
+            }
+        }
+        double delta = -windows();
+        for (int i = 0; i < _numChanged; i += 1) {
+            int t = _changed[i];
+            _oldMiddle[t] = _middle[t];
+            _oldPlain[t] = _plain[t];
+            int c = _table.text(t);
+            if (_rewired[c]) {
+                _middle[t] = _table.core(t, _plug[c]);
+            }
+            _plain[t] = _plug[_middle[t]];
+        }
+        return delta + windows();
+    }
+
+    /** Add position T to _changed, unless it is already there. */
+    private void change(int t) {
+        if (_positionMarks[t] != _trial) {
+            _positionMarks[t] = _trial;
+            _changed[_numChanged] = t;
+            _numChanged += 1;
+        }
+    }
+
+    /** Return the total score of the n-grams of _plain starting at the
+     *  positions in _windows. */
+    private double windows() {
+        double sum = 0;
+        for (int i = 0; i < _numWindows; i += 1) {
+            sum += _scorer.window(_plain, _windows[i]);
+        }
+        return sum;
+    }
+
+    /** Add position T to the bucket of _middle[T]. */
+    private void addToBucket(int t) {
+        int c = _middle[t];
+        if (_bucketSize[c] == _buckets[c].length) {
+            _buckets[c] = Arrays.copyOf(_buckets[c], 2 * _bucketSize[c]);
+        }
+        _slot[t] = _bucketSize[c];
+        _buckets[c][_bucketSize[c]] = t;
+        _bucketSize[c] += 1;
+    }
+
+    /** Remove position T from the bucket of C. */
+    private void removeFromBucket(int t, int c) {
+        _bucketSize[c] -= 1;
+        int last = _buckets[c][_bucketSize[c]];
+        _buckets[c][_slot[t]] = last;
+        _slot[last] = _slot[t];
+    }
+
+    /** Smallest improvement in score that is kept, so that rounding in
+     *  the incremental score cannot cause endless changes. */
+    private static final double EPSILON = 1e-6;
+
+    /** Initial capacity of each bucket. */
+    private static final int INITIAL_BUCKET = 16;
+
+    /** A session at the start of a message. */
+    private final MachineState _start;
+
+    /** The scorer of decryptions. */
+    private final NgramScorer _scorer;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The length of the scorer's n-grams. */
+    private final int _order;
+
+    /** The largest number of connected pairs. */
+    private int _maxPairs = DEFAULT_MAX_PAIRS;
+
+    /** The core table of the ciphertext. */
+    private CoreTable _table;
+
+    /** The length of the ciphertext. */
+    private int _len;
+
+    /** The image of each character under the current plugboard. */
+    private int[] _plug;
+
+    /** The number of connected pairs in _plug. */
+    private int _pairs;
+
+    /** The character leaving the core at each position. */
+    private int[] _middle;
+
+    /** The decryption under the current plugboard. */
+    private int[] _plain;
+
+    /** The score of _plain. */
+    private double _score;
+
+    /** The positions T with _middle[T] == C are the first _bucketSize[C]
+     *  entries of _buckets[C], and T is at index _slot[T] there. */
+    private int[][] _buckets;
+
+    /** The number of valid entries in each of _buckets. */
+    private int[] _bucketSize;
+
+    /** The index of each position in its bucket. */
+    private int[] _slot;
+
+    /** The characters rewired by the current trial. */
+    private final int[] _letters = new int[4];
+
+    /** The number of valid entries in _letters. */
+    private int _numLetters;
+
+    /** Marks the characters rewired by the current trial. */
+    private boolean[] _rewired;
+
+    /** The number of the current trial. */
+    private int _trial;
+
+    /** The positions changed by the current trial. */
+    private int[] _changed;
+
+    /** The number of valid entries in _changed. */
+    private int _numChanged;
+
+    /** The values of _middle and _plain before the current trial, at the
+     *  positions in _changed. */
+    private int[] _oldMiddle, _oldPlain;
+
+    /** _positionMarks[T] is _trial iff T is in _changed. */
+    private int[] _positionMarks;
+
+    /** The starts of the n-grams rescored by the current trial. */
+    private int[] _windows;
+
+    /** The number of valid entries in _windows. */
+    private int _numWindows;
+
+    /** _windowMarks[S] is _trial iff S is in _windows. */
+    private int[] _windowMarks;
+
+}
@@ -0,0 +1,197 @@
+package enigma;
+
+/** A Machine whose every moving-rotor state has been precomputed: the
+ *  fused substitution of each state is stored in one contiguous array, and
+ *  the stepping rule in a table of successor states, so that converting a
+ *  character is two array reads with no rotor objects involved. States are
+ *  numbered as by RotorStepper.encode, and the tables are rebuilt whenever
+ *  the settings of the fixed rotors change. When the tables would exceed
+ *  a memory budget, or the machine uses the same rotor in two slots, I
+ *  fall back to converting with the Machine itself.
+ *  @author agent
+ */
+class PrecomputedMachine {
+
+    /** Default memory budget for the tables, in bytes. */
+    static final long DEFAULT_BUDGET = 64L << 20;
+
+    /** A precomputed form of MACHINE, whose rotors must be inserted, within
+     *  the default memory budget. */
+    PrecomputedMachine(Machine machine) {
+        this(machine, DEFAULT_BUDGET);
+    }
+
+    /** A precomputed form of MACHINE, whose rotors must be inserted, whose
+     *  tables may use at most BUDGET bytes. Conversion starts from
+     *  MACHINE's current settings. */
+    PrecomputedMachine(Machine machine, long budget) {
+        _machine = machine;
+        if (machine.repeatsRotors()) {
+            _spec = null;
+            _stepper = null;
+            _size = 0;
+            _settings = null;
+            _next = null;
+            _bytes = null;
+            _chars = null;
+            return;
+        }
+        _spec = machine.compile();
+        _stepper = _spec.stepper();
+        _size = _spec.size();
+        _settings = _spec.newSession().settingsArray();
+        long states = _stepper.encodable() ? 1 : -1;
+        for (int i = _stepper.firstMoving(); i <= _stepper.lastMoving()
+                 && states > 0; i += 1) {
+            states = states <= Integer.MAX_VALUE / _size ? states * _size : -1;
+        }
+        long cells = states * _size;
+        long bytes = cells * (_size <= BYTE_LIMIT ? 1 : 2) + states * 4;
+        if (states < 0 || cells > Integer.MAX_VALUE || bytes > budget) {
+            _next = null;
+            _bytes = null;
+            _chars = null;
+            return;
+        }
+        int n = (int) states;
+        _next = new int[n];
+        _bytes = _size <= BYTE_LIMIT ? new byte[n * _size] : null;
+        _chars = _size <= BYTE_LIMIT ? null : new char[n * _size];
+        fill();
+        _state = (int) _stepper.encode(_settings);
+    }
+
+    /** Return true iff my tables were built, rather than falling back to
+     *  the Machine. */
+    boolean precomputed() {
+        return _next != null;
+    }
+
+    /** Return the number of bytes used by my tables. */
+    long tableBytes() {
+        if (_next == null) {
+            return 0;
+        }
+        long cells = _bytes != null ? _bytes.length : 2L * _chars.length;
+        return cells + 4L * _next.length;
+    }
+
+    /** Set my rotors according to SETTING, as for Machine.setRotors.
+     *  Changing the setting of a fixed rotor rebuilds my tables. */
+    void setRotors(String setting) {
+        _machine.setRotors(setting);
+        if (_next != null) {
+            boolean fixedChanged = false;
+            for (int k = 1; k < _settings.length; k += 1) {
+                int next = _machine.rotor(k).setting();
+                fixedChanged |= k < _stepper.firstMoving()
+                    && next != _settings[k];
+                _settings[k] = next;
+            }
+            if (fixedChanged) {
+                fill();
+            }
+            _state = (int) _stepper.encode(_settings);
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine, exactly as Machine.convert does. */
+    int convert(int c) {
+        if (_next == null) {
+            return _machine.convert(c);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.charConverted();
+        }
+        _state = _next[_state];
+        if (_bytes != null) {
+            return _bytes[_state * _size + c] & 0xff;
+        }
+        return _chars[_state * _size + c];
+    }
+
+    /** Converts the LEN alphabet indices of IN starting at OFF, writing
+     *  the results into OUT starting at OUTOFF. IN and OUT may be the same
+     *  array when OUTOFF <= OFF. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(in[off + i]);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, as for Machine.convert:
+     *  whitespace is dropped and letters are upper-cased first. */
+    String convert(String msg) {
+        if (_next == null) {
+            return _machine.convert(msg);
+        }
+        Alphabet alphabet = _spec.alphabet();
+        char[] chars = msg.toCharArray();
+        int len = 0;
+        for (char ch : chars) {
+            if (!Machine.isWhitespace(ch)) {
+                int c = alphabet.toInt(Character.toUpperCase(ch));
+                chars[len] = alphabet.toChar(convert(c));
+                len += 1;
+            }
+        }
+        return new String(chars, 0, len);
+    }
+
+    /** Fill my tables for the current settings of the fixed rotors in
+     *  _settings. */
+    private void fill() {
+        int n = _next.length;
+        int[] settings = _settings.clone();
+        int[] fused = new int[_size];
+        for (int s = 0; s < n; s += 1) {
+            _stepper.decode(s, settings);
+            _spec.fused(settings, fused);
+            for (int c = 0; c < _size; c += 1) {
+                if (_bytes != null) {
+                    _bytes[s * _size + c] = (byte) fused[c];
+                } else {
+                    _chars[s * _size + c] = (char) fused[c];
+                }
+            }
+            _stepper.step(settings);
+            _next[s] = (int) _stepper.encode(settings);
+        }
+    }
+
+    /** Largest alphabet whose substitutions are stored as bytes. */
+    private static final int BYTE_LIMIT = 256;
+
+    /** The machine I was built from, used when not precomputed. */
+    private final Machine _machine;
+
+    /** The compiled form of _machine, or null if it repeats rotors. */
+    private final MachineSpec _spec;
+
+    /** The stepping rule of _machine's moving rotors. */
+    private final RotorStepper _stepper;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** Settings of all slots, used to encode the current state. */
+    private final int[] _settings;
+
+    /** The number of the state following each state, or null if not
+     *  precomputed. */
+    private final int[] _next;
+
+    /** The substitution for each state, as rows of _size entries, when
+     *  the alphabet is small enough for bytes. */
+    private final byte[] _bytes;
+
+    /** The substitution for each state, as rows of _size entries, when
+     *  the alphabet is too large for bytes. */
+    private final char[] _chars;
+
+    /** The number of the current state. */
+    private int _state;
+
+}
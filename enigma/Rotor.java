@@ -11,6 +11,7 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _size = perm.size();
     }
 
     /** Return my name. */
@@ -65,6 +66,9 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
+        if (_forwardTable != null) {
+            return _forwardTable[_setting * _size + p];
+        }
         int permute0 = (p + setting()) % size();
         int permute1 = permutation().permute(permute0);
         int permute2 = permutation().wrap(permute1 - setting());
@@ -74,18 +78,49 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        if (_backwardTable != null) {
+            return _backwardTable[_setting * _size + e];
+        }
         int permute0 = (e + setting()) % size();
         int permute1 = permutation().invert(permute0);
         int permute2 = permutation().wrap(permute1 - setting());
         return permute2;
     }
 
+    /** Precompute my conversions in both directions for every setting,
+     *  so that convertForward and convertBackward become a single table
+     *  lookup indexed by setting() and the input. */
+    void precompute() {
+        int[] forward = new int[_size * _size];
+        int[] backward = new int[_size * _size];
+        for (int s = 0; s < _size; s += 1) {
+            for (int p = 0; p < _size; p += 1) {
+                int permuted = permutation().permute((p + s) % _size);
+                forward[s * _size + p] = permutation().wrap(permuted - s);
+                int inverted = permutation().invert((p + s) % _size);
+                backward[s * _size + p] = permutation().wrap(inverted - s);
+            }
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
+    }
+
+    /** Return true iff my conversions have been precomputed. */
+    boolean precomputed() {
+        return _forwardTable != null;
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
         return false;
     }
 
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -104,4 +139,15 @@ class Rotor {
    /** The setting of the rotor. */
     private int _setting;
 
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** When precomputed, the result of convertForward(P) at setting S is
+     *  at index S * size() + P. */
+    private int[] _forwardTable;
+
+    /** When precomputed, the result of convertBackward(E) at setting S is
+     *  at index S * size() + E. */
+    private int[] _backwardTable;
+
 }
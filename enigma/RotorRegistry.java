@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.Collection;
+
+/** An index of rotors by name, ignoring case. Lookups hash and compare
+ *  the name in place, so they allocate nothing. When two rotors have
+ *  names that differ only in case, the first one added is found.
+ *  @author agent
+ */
+class RotorRegistry {
+
+    /** A registry of ROTORS, ignoring null entries. */
+    RotorRegistry(Collection<Rotor> rotors) {
+        int slots = Integer.highestOneBit(Math.max(rotors.size(), 1) * 2) * 2;
+        _slots = new Rotor[slots];
+        _mask = slots - 1;
+        for (Rotor rotor : rotors) {
+            if (rotor == null) {
+                continue;
+            }
+            int slot = find(rotor.name());
+            if (_slots[slot] == null) {
+                _slots[slot] = rotor;
+                _size += 1;
+            }
+        }
+    }
+
+    /** Return the rotor named NAME, ignoring case, or null if there is
+     *  none. */
+    Rotor get(String name) {
+        return _slots[find(name)];
+    }
+
+    /** Return the number of distinct names I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the slot holding the rotor named NAME, or the empty slot
+     *  where it would go. */
+    private int find(String name) {
+        int slot = hash(name) & _mask;
+        while (_slots[slot] != null && !sameName(_slots[slot].name(), name)) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /** Return a hash of NAME that ignores case. */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i += 1) {
+            h = 31 * h + Character.toUpperCase(name.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Return true iff A and B are the same name, ignoring case. */
+    private static boolean sameName(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i += 1) {
+            if (Character.toUpperCase(a.charAt(i))
+                != Character.toUpperCase(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Open-addressed hash table of rotors, with null for an empty slot. */
+    private final Rotor[] _slots;
+
+    /** _slots.length - 1. */
+    private final int _mask;
+
+    /** Number of rotors held. */
+    private int _size;
+
+}
@@ -0,0 +1,162 @@
+package enigma;
+
+/** The stepping rule of a machine's moving rotors, applied to an array of
+ *  rotor settings rather than to the rotors themselves. Arrays of settings
+ *  are indexed by slot, as in Machine, and only the moving slots are
+ *  changed.
+ *  @author agent
+ */
+class RotorStepper {
+
+    /** The stepping rule for the rotors in SLOTS, of which the last PAWLS
+     *  move. */
+    RotorStepper(Rotor[] slots, int pawls) {
+        _size = slots[0].size();
+        _last = slots.length - 1;
+        _first = slots.length - pawls;
+        _notches = new boolean[slots.length][_size];
+        for (int i = _first; i <= _last; i += 1) {
+            for (int s = 0; s < _size; s += 1) {
+                _notches[i][s] = slots[i].notchAt(s);
+            }
+        }
+        long states = 1;
+        for (int i = _first; i <= _last && states > 0; i += 1) {
+            states = states <= Long.MAX_VALUE / _size ? states * _size : -1;
+        }
+        _encodable = states > 0;
+    }
+
+    /** Return the size of the rotors' alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the slot of the leftmost moving rotor. There are no moving
+     *  rotors if this is greater than lastMoving(). */
+    int firstMoving() {
+        return _first;
+    }
+
+    /** Return the slot of the rightmost rotor. */
+    int lastMoving() {
+        return _last;
+    }
+
+    /** Return true iff slot K is at a notch when its setting is S. */
+    boolean notchAt(int k, int s) {
+        return _notches[k][s];
+    }
+
+    /** Advance SETTINGS by one key press, following Machine.advanceSet. */
+    void step(int[] settings) {
+        if (_first > _last) {
+            return;
+        }
+        boolean notched = _notches[_first][settings[_first]];
+        for (int i = _first; i <= _last; i += 1) {
+            boolean rightNotched = i < _last
+                && _notches[i + 1][settings[i + 1]];
+            if (i == _last || rightNotched || (notched && i > _first)) {
+                settings[i] = settings[i] + 1 == _size ? 0 : settings[i] + 1;
+            }
+            notched = rightNotched;
+        }
+    }
+
+    /** Advance SETTINGS by N key presses. The rightmost rotor returns to
+     *  its setting every size() presses, and the other rotors' settings
+     *  after each such revolution depend only on their settings before it,
+     *  so whole revolutions are applied until Brent's method finds that
+     *  sequence repeating, after which the rest of them are skipped. No
+     *  encoding or table of states is needed, so this works for any number
+     *  of rotors. Brent's method applies fewer than about three times as
+     *  many revolutions as the transient plus the period of that sequence,
+     *  which together are at most size()^(P-1) for P moving rotors. A
+     *  seek therefore costs at most on the order of P * size()^P rotor
+     *  steps however large N is (roughly 50,000 for three moving rotors of
+     *  26 letters), and never more than stepping N times. */
+    void seek(int[] settings, long n) {
+        if (_first > _last || n <= 0) {
+            return;
+        }
+        long revolutions = n / _size;
+        if (revolutions > 0) {
+            int[] tortoise = settings.clone();
+            revolve(settings);
+            long done = 1, power = 1, lambda = 1;
+            while (done < revolutions && !sameMoving(tortoise, settings)) {
+                if (power == lambda) {
+                    System.arraycopy(settings, _first, tortoise, _first,
+                                     _last - _first + 1);
+                    power *= 2;
+                    lambda = 0;
+                }
+                revolve(settings);
+                done += 1;
+                lambda += 1;
+            }
+            for (long k = (revolutions - done) % lambda; k > 0; k -= 1) {
+                revolve(settings);
+            }
+        }
+        for (long k = n % _size; k > 0; k -= 1) {
+            step(settings);
+        }
+    }
+
+    /** Return true iff every combination of moving rotor settings can be
+     *  encoded as a long. */
+    boolean encodable() {
+        return _encodable;
+    }
+
+    /** Return the moving rotor settings in SETTINGS as a single number,
+     *  which encodable() must permit. */
+    long encode(int[] settings) {
+        long key = 0;
+        for (int i = _first; i <= _last; i += 1) {
+            key = key * _size + settings[i];
+        }
+        return key;
+    }
+
+    /** Set the moving rotor settings in SETTINGS to those encoded by
+     *  KEY. */
+    void decode(long key, int[] settings) {
+        for (int i = _last; i >= _first; i -= 1) {
+            settings[i] = (int) (key % _size);
+            key /= _size;
+        }
+    }
+
+    /** Return true iff the moving rotor settings in A and B are equal. */
+    private boolean sameMoving(int[] a, int[] b) {
+        for (int i = _first; i <= _last; i += 1) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Advance SETTINGS by one full revolution of the rightmost rotor. */
+    private void revolve(int[] settings) {
+        for (int k = 0; k < _size; k += 1) {
+            step(settings);
+        }
+    }
+
+    /** The size of the rotors' alphabet. */
+    private final int _size;
+
+    /** The leftmost and rightmost moving slots. */
+    private final int _first, _last;
+
+    /** Whether each setting of each slot is a notch position. */
+    private final boolean[][] _notches;
+
+    /** True iff encode can represent every state of the moving rotors. */
+    private final boolean _encodable;
+
+}
@@ -0,0 +1,13 @@
+package enigma;
+
+/** A measure of how much a candidate decryption resembles plaintext, as
+ *  used by KeySearch; higher scores are better. A Scorer may be called
+ *  by several threads at once.
+ *  @author agent
+ */
+interface Scorer {
+
+    /** Return the score of the first LEN alphabet indices of TEXT. */
+    double score(int[] text, int len);
+
+}
@@ -1,5 +1,6 @@
 package enigma;
-import java.util.ArrayList;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Class that extends Alphabet used for Extra Credit Part. You
@@ -8,31 +9,37 @@ import static enigma.EnigmaException.*;
 public class SequenceAlphabet extends Alphabet {
 
     /** Stores the sequence of Alphabets. */
-    private ArrayList<Character> _seq;
+    private char[] _seq;
+
+    /** Index of each character in _seq, indexed by character, or -1 for
+     * characters not in _seq. Covers characters up to the largest one in
+     * _seq. */
+    private int[] _indices;
 
     /** Create a new sequence Alphabet where you can choose how
      * many characters are in the alphabet.
      * @param seq is the sequence you choose. */
     SequenceAlphabet(String seq) {
-        _seq = new ArrayList<>();
-        for (int i = 0; i < seq.length(); i += 1) {
-            _seq.add(seq.charAt(i));
+        _seq = seq.toCharArray();
+        char max = 0;
+        for (char ch : _seq) {
+            max = (char) Math.max(max, ch);
+        }
+        _indices = new int[max + 1];
+        Arrays.fill(_indices, -1);
+        for (int i = _seq.length - 1; i >= 0; i -= 1) {
+            _indices[_seq[i]] = i;
         }
     }
 
     @Override
     int size() {
-        return _seq.size();
+        return _seq.length;
     }
 
     @Override
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i += 1) {
-            if (_seq.get(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return ch < _indices.length && _indices[ch] >= 0;
     }
 
     @Override
@@ -40,7 +47,7 @@ public class SequenceAlphabet extends Alphabet {
         if (index > size() - 1) {
             throw error("Character index out of range!");
         }
-        return _seq.get(index);
+        return _seq[index];
     }
 
     @Override
@@ -48,7 +55,7 @@ public class SequenceAlphabet extends Alphabet {
         if (!contains(ch)) {
             throw error("Character out of range!");
         }
-        return _seq.indexOf(ch);
+        return _indices[ch];
     }
 
 }
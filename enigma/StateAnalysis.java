@@ -0,0 +1,289 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** An analysis of the rotor states of a machine, for auditing keys: the
+ *  period of the sequence of states from a start, how many key presses
+ *  pass before that sequence starts repeating, the cycles of the whole
+ *  graph of states under the stepping rule, and the cycle type of the
+ *  machine's permutation at each state.
+ *
+ *  The rightmost rotor advances at every key press, so the states repeat
+ *  after a whole number of its revolutions, and every cycle of states
+ *  passes through the states with the rightmost rotor at setting 0 once
+ *  per revolution. The analysis therefore works with the map taking a
+ *  state to the state one revolution later, with states of the moving
+ *  rotors encoded as longs by RotorStepper.encode. The period is found
+ *  by Brent's cycle-finding method in constant space. The state graph is
+ *  found from a table of that map over the states with the rightmost
+ *  rotor at 0, when there are at most MAX_TABLE of them.
+ *
+ *  The machine's permutation at any state is its reflector conjugated by
+ *  the plugboard and the rotors' forward path, so its cycle type is the
+ *  same at every state.
+ *  @author agent
+ */
+class StateAnalysis {
+
+    /** Largest number of states for which the state graph is found. */
+    static final int MAX_TABLE = 1 << 24;
+
+    /** An analysis of the machine START is a session of, from START's
+     *  current state. */
+    StateAnalysis(MachineState start) {
+        _spec = start.spec();
+        _stepper = _spec.stepper();
+        _size = _stepper.size();
+        _start = start.settingsArray();
+        _scratch = _start.clone();
+        if (!_stepper.encodable()) {
+            throw error("too many rotor states to analyze");
+        }
+        findPeriod();
+        findCycles();
+        findCycleType();
+    }
+
+    /** Return the number of key presses after which the states from the
+     *  start, once past the transient, repeat. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the number of key presses from the start before the first
+     *  state that recurs. */
+    long transientLength() {
+        return _transient;
+    }
+
+    /** Return true iff the whole state graph was analyzed. */
+    boolean graphAnalyzed() {
+        return _cycles != null;
+    }
+
+    /** Return the number of states of the moving rotors. */
+    long states() {
+        return _states;
+    }
+
+    /** Return the number of states that lie on a cycle, if
+     *  graphAnalyzed(). */
+    long cyclicStates() {
+        return _cyclicStates;
+    }
+
+    /** Return the number of cycles of the state graph of each length, if
+     *  graphAnalyzed(). */
+    SortedMap<Long, Long> cycles() {
+        return new TreeMap<>(_cycles);
+    }
+
+    /** Return the cycle type of the machine's permutation, as a list of
+     *  LENGTH^COUNT terms, such as "2^13" for 13 transpositions. */
+    String cycleType() {
+        return _cycleType;
+    }
+
+    /** Print a report of the analysis to OUT. */
+    void report(PrintStream out) {
+        out.printf("  period: %d%n", _period);
+        out.printf("  transient: %d%n", _transient);
+        if (graphAnalyzed()) {
+            out.printf("  states: %d, %d on cycles, %d transient%n",
+                       _states, _cyclicStates, _states - _cyclicStates);
+            StringBuilder cycles = new StringBuilder();
+            for (Map.Entry<Long, Long> entry : _cycles.entrySet()) {
+                cycles.append(' ').append(entry.getKey()).append('x')
+                    .append(entry.getValue());
+            }
+            out.printf("  cycles:%s%n", cycles);
+        } else {
+            out.printf("  states: %d, too many to find cycles%n", _states);
+        }
+        out.printf("  cycle type: %s%n", _cycleType);
+    }
+
+    /** Set _period and _transient by Brent's method on the revolution
+     *  map, refining the transient to single key presses. */
+    private void findPeriod() {
+        if (_stepper.firstMoving() > _stepper.lastMoving()) {
+            _period = 1;
+            _transient = 0;
+            return;
+        }
+        long x0 = _stepper.encode(_start);
+        long power = 1, lambda = 1;
+        long tortoise = x0, hare = revolve(x0);
+        while (tortoise != hare) {
+            if (power == lambda) {
+                tortoise = hare;
+                power *= 2;
+                lambda = 0;
+            }
+            hare = revolve(hare);
+            lambda += 1;
+        }
+        long mu = 0;
+        tortoise = x0;
+        hare = x0;
+        for (long i = 0; i < lambda; i += 1) {
+            hare = revolve(hare);
+        }
+        while (tortoise != hare) {
+            tortoise = revolve(tortoise);
+            hare = revolve(hare);
+            mu += 1;
+        }
+        _period = lambda * _size;
+        if (mu == 0) {
+            _transient = 0;
+            return;
+        }
+        int[] early = _start.clone();
+        for (long i = 0; i < mu - 1; i += 1) {
+            revolve(early);
+        }
+        int[] late = early.clone();
+        for (long i = 0; i < lambda; i += 1) {
+            revolve(late);
+        }
+        long t = (mu - 1) * _size;
+        while (_stepper.encode(early) != _stepper.encode(late)) {
+            _stepper.step(early);
+            _stepper.step(late);
+            t += 1;
+        }
+        _transient = t;
+    }
+
+    /** Set _states and, if there are few enough states, _cyclicStates
+     *  and _cycles, from a table of the revolution map over the states
+     *  with the rightmost moving rotor at 0. */
+    private void findCycles() {
+        int first = _stepper.firstMoving(), last = _stepper.lastMoving();
+        long slice = 1;
+        for (int k = first; k < last; k += 1) {
+            slice *= _size;
+        }
+        _states = first > last ? 1 : slice * _size;
+        if (first > last) {
+            _cyclicStates = 1;
+            _cycles = new TreeMap<>();
+            _cycles.put(1L, 1L);
+            return;
+        }
+        if (slice > MAX_TABLE) {
+            return;
+        }
+        int n = (int) slice;
+        int[] next = new int[n];
+        int[] settings = _start.clone();
+        for (int i = 0; i < n; i += 1) {
+            _stepper.decode((long) i * _size, settings);
+            revolve(settings);
+            next[i] = (int) (_stepper.encode(settings) / _size);
+        }
+        _cycles = new TreeMap<>();
+        long cyclic = 0;
+        int[] visit = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int x = i;
+            while (visit[x] == 0) {
+                visit[x] = i + 1;
+                x = next[x];
+            }
+            if (visit[x] == i + 1) {
+                long length = 1;
+                for (int y = next[x]; y != x; y = next[y]) {
+                    length += 1;
+                }
+                cyclic += length;
+                _cycles.merge(length * _size, 1L, Long::sum);
+            }
+        }
+        _cyclicStates = cyclic * _size;
+    }
+
+    /** Set _cycleType from the machine's permutation at the start. */
+    private void findCycleType() {
+        int[] table = new int[_size];
+        _spec.fused(_start, table);
+        int[] counts = new int[_size + 1];
+        boolean[] seen = new boolean[_size];
+        for (int c = 0; c < _size; c += 1) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int d = c; !seen[d]; d = table[d]) {
+                    seen[d] = true;
+                    length += 1;
+                }
+                counts[length] += 1;
+            }
+        }
+        StringBuilder type = new StringBuilder();
+        for (int length = 1; length <= _size; length += 1) {
+            if (counts[length] > 0) {
+                if (type.length() > 0) {
+                    type.append(' ');
+                }
+                type.append(length).append('^').append(counts[length]);
+            }
+        }
+        _cycleType = type.toString();
+    }
+
+    /** Return the encoding of the state one revolution after the state
+     *  encoded by STATE. */
+    private long revolve(long state) {
+        _stepper.decode(state, _scratch);
+        revolve(_scratch);
+        return _stepper.encode(_scratch);
+    }
+
+    /** Advance SETTINGS by one revolution of the rightmost rotor. */
+    private void revolve(int[] settings) {
+        for (int k = 0; k < _size; k += 1) {
+            _stepper.step(settings);
+        }
+    }
+
+    /** The machine analyzed. */
+    private final MachineSpec _spec;
+
+    /** The stepping rule of _spec. */
+    private final RotorStepper _stepper;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The settings at the start. */
+    private final int[] _start;
+
+    /** Settings used by revolve(long). */
+    private final int[] _scratch;
+
+    /** The period from the start. */
+    private long _period;
+
+    /** The length of the transient from the start. */
+    private long _transient;
+
+    /** The number of states of the moving rotors. */
+    private long _states;
+
+    /** The number of states on cycles. */
+    private long _cyclicStates;
+
+    /** The number of cycles of each length, or null if the state graph
+     *  was not analyzed. */
+    private TreeMap<Long, Long> _cycles;
+
+    /** The cycle type of the machine's permutation. */
+    private String _cycleType;
+
+}
@@ -0,0 +1,242 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a Machine to a stream of settings lines and messages in large
+ *  chunks, producing exactly the output of Main's line-by-line processing.
+ *  Input is decoded a buffer at a time, message characters are converted
+ *  as they arrive, and the five-letter groups are written into a reusable
+ *  output buffer that is encoded and flushed in large writes.
+ *  @author agent
+ */
+class StreamProcessor {
+
+    /** Size in bytes of the input buffer and initial size in chars of
+     *  the output buffer. */
+    static final int CHUNK = 1 << 16;
+
+    /** A processor that applies MACHINE to the input read from INPUT,
+     *  writing results to OUTPUT, both encoded in CHARSET. */
+    StreamProcessor(Machine machine, ReadableByteChannel input,
+                    WritableByteChannel output, Charset charset) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _input = input;
+        _output = output;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _separator = System.lineSeparator();
+        _out = new char[CHUNK];
+        _bytesOut = ByteBuffer.allocate(CHUNK * 4);
+    }
+
+    /** Process all of my input. As in Main, the first line must be a
+     *  settings line, and later lines starting with '*' change the
+     *  settings. If a message line is in error, output for the preceding
+     *  lines is still written. */
+    void process() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK);
+        CharBuffer chars = CharBuffer.allocate(CHUNK);
+        try {
+            boolean eof = false;
+            while (!eof) {
+                int n = _input.read(bytes);
+                eof = n < 0;
+                if (Metrics.ENABLED && n > 0) {
+                    Metrics.bytesIn(n);
+                }
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = _decoder.decode(bytes, chars, eof);
+                    accept(chars);
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            while (_decoder.flush(chars).isOverflow()) {
+                accept(chars);
+            }
+            accept(chars);
+            if (_kind != START) {
+                endLine();
+            }
+        } catch (EnigmaException excp) {
+            _outLen = _committed;
+            throw excp;
+        } finally {
+            flush(_committed);
+        }
+    }
+
+    /** Consume the decoded characters in CHARS, leaving it empty. */
+    private void accept(CharBuffer chars) {
+        chars.flip();
+        char[] buf = chars.array();
+        for (int i = chars.position(); i < chars.limit(); i += 1) {
+            accept(buf[i]);
+        }
+        chars.clear();
+    }
+
+    /** Consume the input character CH. Lines end as for Scanner.nextLine,
+     *  with "\r\n" treated as a single terminator. */
+    private void accept(char ch) {
+        if (_afterReturn) {
+            _afterReturn = false;
+            if (ch == '\n') {
+                return;
+            }
+        }
+        switch (ch) {
+        case '\n': case '\r': case '\u2028': case '\u2029': case '\u0085':
+            endLine();
+            _afterReturn = ch == '\r';
+            return;
+        default:
+            break;
+        }
+        if (_kind == START) {
+            _kind = _firstLine || ch == '*' ? SETTING : MESSAGE;
+        }
+        if (_kind == SETTING) {
+            _setting.append(ch);
+        } else if (!Machine.isWhitespace(ch)) {
+            int c = _alphabet.toInt(Character.toUpperCase(ch));
+            write(_alphabet.toChar(_machine.convert(c)));
+            _group += 1;
+            if (_group == 5) {
+                write(' ');
+                _group = 0;
+            }
+        }
+    }
+
+    /** Finish the current line. */
+    private void endLine() {
+        if (_kind == SETTING || _firstLine) {
+            String line = _setting.toString();
+            if (_firstLine && !line.contains("*")) {
+                throw error("You must put a setting config in your input!");
+            }
+            Main.setUp(_machine, line);
+            _setting.setLength(0);
+            _firstLine = false;
+        } else {
+            for (int i = 0; i < _separator.length(); i += 1) {
+                write(_separator.charAt(i));
+            }
+            _committed = _outLen;
+        }
+        _kind = START;
+        _group = 0;
+    }
+
+    /** Append CH to the output buffer. If it is full, first flush the
+     *  complete lines it holds or, if there are none, grow it, so that
+     *  no part of a line is written before the whole line is known to
+     *  be valid. */
+    private void write(char ch) {
+        if (_outLen == _out.length) {
+            if (_committed > 0) {
+                flush(_committed);
+            } else {
+                _out = Arrays.copyOf(_out, 2 * _out.length);
+            }
+        }
+        _out[_outLen] = ch;
+        _outLen += 1;
+    }
+
+    /** Encode and write the first LEN buffered characters, moving the
+     *  remainder to the front of the buffer. */
+    private void flush(int len) {
+        CharBuffer chars = CharBuffer.wrap(_out, 0, len);
+        try {
+            CoderResult result;
+            do {
+                result = _encoder.encode(chars, _bytesOut, false);
+                _bytesOut.flip();
+                while (_bytesOut.hasRemaining()) {
+                    int n = _output.write(_bytesOut);
+                    if (Metrics.ENABLED) {
+                        Metrics.bytesOut(n);
+                    }
+                }
+                _bytesOut.clear();
+            } while (result.isOverflow());
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        System.arraycopy(_out, len, _out, 0, _outLen - len);
+        _outLen -= len;
+        _committed -= len;
+    }
+
+    /** Kinds of line: not yet known, settings, and message. */
+    private static final int START = 0, SETTING = 1, MESSAGE = 2;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Source of settings lines and messages. */
+    private final ReadableByteChannel _input;
+
+    /** Destination of converted messages. */
+    private final WritableByteChannel _output;
+
+    /** Decoder for _input. */
+    private final CharsetDecoder _decoder;
+
+    /** Encoder for _output. */
+    private final CharsetEncoder _encoder;
+
+    /** Line terminator written after each message line. */
+    private final String _separator;
+
+    /** Buffered output characters. */
+    private char[] _out;
+
+    /** Number of characters in _out. */
+    private int _outLen;
+
+    /** Length of the prefix of _out that holds complete lines. */
+    private int _committed;
+
+    /** Encoded output waiting to be written. */
+    private final ByteBuffer _bytesOut;
+
+    /** The settings line read so far. */
+    private final StringBuilder _setting = new StringBuilder();
+
+    /** The kind of the current line. */
+    private int _kind = START;
+
+    /** True until the first line has been read. */
+    private boolean _firstLine = true;
+
+    /** True iff the last character was '\r'. */
+    private boolean _afterReturn;
+
+    /** Number of characters in the current output group. */
+    private int _group;
+
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A LockstepEngine that converts blocks of SPECIES.length() lanes at a
+ *  time with the Vector API: rotor offsets are vector additions with
+ *  masked wrap-around, and wiring, notch and plugboard lookups are
+ *  gathers. Each block keeps the settings of its lanes in vectors for the
+ *  whole message; lanes left over after the last full block are converted
+ *  by the scalar loops. Compiling and running this class requires
+ *  --add-modules jdk.incubator.vector; use LockstepEngine.create to obtain
+ *  it only when that module is present.
+ *  @author agent
+ */
+final class VectorLockstepEngine extends LockstepEngine {
+
+    /** The vector shape used for lanes. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** An engine converting messages for sessions of SPEC. */
+    VectorLockstepEngine(MachineSpec spec) {
+        super(spec);
+    }
+
+    @Override
+    boolean vectorized() {
+        return true;
+    }
+
+    @Override
+    void convert(int[][] settings, int lanes, int[] data, int len) {
+        MachineSpec spec = spec();
+        int slots = settings.length;
+        int first = spec.stepper().firstMoving();
+        int last = spec.stepper().lastMoving();
+        int width = SPECIES.length();
+        int upper = SPECIES.loopBound(lanes);
+        int[] index = new int[width];
+        IntVector[] s = new IntVector[slots];
+        for (int l = 0; l < upper; l += width) {
+            for (int k = 0; k < slots; k += 1) {
+                s[k] = IntVector.fromArray(SPECIES, settings[k], l);
+            }
+            for (int t = 0; t < len; t += 1) {
+                int off = t * lanes + l;
+                if (first <= last) {
+                    VectorMask<Integer> notched =
+                        notched(first, s[first], index);
+                    for (int i = first; i <= last; i += 1) {
+                        VectorMask<Integer> rightNotched = i < last
+                            ? notched(i + 1, s[i + 1], index) : NONE;
+                        VectorMask<Integer> moves = i == last ? ALL
+                            : i > first ? rightNotched.or(notched)
+                            : rightNotched;
+                        s[i] = s[i].add(1, moves);
+                        s[i] = s[i].blend(0, s[i].compare(
+                                VectorOperators.EQ, size()));
+                        notched = rightNotched;
+                    }
+                }
+                IntVector c = IntVector.fromArray(SPECIES, data, off);
+                c = gather(plugboard(), c, index);
+                for (int k = slots - 1; k >= 0; k -= 1) {
+                    c = through(spec.forward(k), s[k], c, index);
+                }
+                for (int k = 1; k < slots; k += 1) {
+                    c = through(spec.backward(k), s[k], c, index);
+                }
+                c = gather(plugboard(), c, index);
+                c.intoArray(data, off);
+            }
+            for (int k = 0; k < slots; k += 1) {
+                s[k].intoArray(settings[k], l);
+            }
+        }
+        if (upper < lanes) {
+            for (int t = 0; t < len; t += 1) {
+                convertLanes(settings, upper, lanes, data, t * lanes);
+            }
+        }
+    }
+
+    /** Return the lanes in which slot K is at a notch at settings S,
+     *  using INDEX as scratch space. */
+    private VectorMask<Integer> notched(int k, IntVector s, int[] index) {
+        return gather(notches(k), s, index).compare(VectorOperators.NE, 0);
+    }
+
+    /** Return the result of passing C through the wiring WIRES of rotors
+     *  at settings S, using INDEX as scratch space. */
+    private IntVector through(int[] wires, IntVector s, IntVector c,
+                              int[] index) {
+        int size = size();
+        IntVector x = c.add(s);
+        x = x.sub(size, x.compare(VectorOperators.GE, size));
+        IntVector y = gather(wires, x, index).sub(s);
+        return y.add(size, y.compare(VectorOperators.LT, 0));
+    }
+
+    /** Return the entries of TABLE indexed by the lanes of I, using INDEX
+     *  as scratch space. */
+    private static IntVector gather(int[] table, IntVector i, int[] index) {
+        i.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /** The mask selecting every lane. */
+    private static final VectorMask<Integer> ALL = SPECIES.maskAll(true);
+
+    /** The mask selecting no lane. */
+    private static final VectorMask<Integer> NONE = SPECIES.maskAll(false);
+
+}